@@ -0,0 +1,66 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a client file name into an object key, run on every upload.
+ * {@link #regexChain} is the former replaceAll-based implementation, kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectKeyBenchmark {
+
+  @Param({
+      "report.pdf",
+      "Bien lai thu phi   thang 01 (ban cuoi) -- v2.PDF",
+      "__..scan 2026-01-15 10.45.33 @ chi nhanh #12 ~ tai lieu dinh kem so 0001.jpeg..__"
+  })
+  public String fileName;
+
+  private ObjectKeyPolicy policy;
+  private ObjectKeyPolicy shardedPolicy;
+
+  @Setup
+  public void setUp() {
+    policy = new DefaultObjectKeyPolicy(new UploadProperties());
+
+    UploadProperties sharded = new UploadProperties();
+    sharded.getKeys().setShards(16);
+    shardedPolicy = new DefaultObjectKeyPolicy(sharded);
+  }
+
+  @Benchmark
+  public String objectKey() {
+    return policy.objectKey(fileName, "/receipts/branch-12/");
+  }
+
+  @Benchmark
+  public String shardedObjectKey() {
+    return shardedPolicy.objectKey(fileName, "/receipts/branch-12/");
+  }
+
+  @Benchmark
+  public String regexChain() {
+    String dir = "/receipts/branch-12/".replaceAll("^/+|/+$", "");
+    LocalDate now = LocalDate.now();
+    String yearMonth = String.format("%d%02d", now.getYear(), now.getMonthValue());
+
+    String sanitized = fileName
+        .replaceAll("[\\s]+", "_")
+        .replaceAll("[^a-zA-Z0-9._-]", "")
+        .replaceAll("_+", "_")
+        .replaceAll("^[._-]+|[._-]+$", "");
+    if (sanitized.isEmpty() || sanitized.equals(".")) {
+      sanitized = "unnamed_file";
+    }
+    return dir + "/" + yearMonth + "/" + sanitized;
+  }
+}
@@ -0,0 +1,63 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.http.Method;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presigned URL generation is pure request signing once the region is known, so it
+ * runs without a MinIO server. Compares signing with a {@link PresignedUrlCache} hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresignBenchmark {
+
+  private static final String OBJECT = "receipts/202601/Bien_lai_thu_phi_thang_01.pdf";
+  private static final Duration EXPIRY = Duration.ofDays(7);
+
+  private MinioClient client;
+  private PresignedUrlCache cache;
+
+  @Setup
+  public void setUp() {
+    client = MinioClient.builder()
+        .endpoint("http://localhost:9000")
+        .region("us-east-1")
+        .credentials("minioadmin", "minioadmin")
+        .build();
+    cache = new PresignedUrlCache(new UploadProperties(), new SimpleMeterRegistry());
+  }
+
+  @Benchmark
+  public String sign() throws Exception {
+    return client.getPresignedObjectUrl(
+        GetPresignedObjectUrlArgs.builder()
+            .method(Method.GET)
+            .bucket("fee-charge-bucket")
+            .object(OBJECT)
+            .expiry((int) EXPIRY.toSeconds(), TimeUnit.SECONDS)
+            .build()
+    );
+  }
+
+  @Benchmark
+  public String cached() {
+    return cache.get(OBJECT, Method.GET, EXPIRY, () -> {
+      try {
+        return sign();
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+}
@@ -0,0 +1,115 @@
+package com.cbs.uploads_service.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copy strategies for the download path: the thread-local buffer of {@link Streams},
+ * {@link InputStream#transferTo}, a per-call buffer, and a file channel transfer as
+ * used for disk cache hits. The source hides its backing array, like a MinIO response
+ * body, and the sink copies every write, like a servlet output buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamCopyBenchmark {
+
+  @Param({"65536", "1048576", "16777216"})
+  public int size;
+
+  private byte[] data;
+  private final OutputStream sink = new ScratchOutputStream();
+  private Path file;
+  private FileChannel channel;
+
+  @Setup
+  public void setUp() throws IOException {
+    data = new byte[size];
+    new Random(42).nextBytes(data);
+
+    file = Files.createTempFile("stream-copy", ".bin");
+    Files.write(file, data);
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    channel.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public long threadLocalBuffer() throws IOException {
+    return Streams.copy(source(), sink);
+  }
+
+  @Benchmark
+  public long transferTo() throws IOException {
+    return source().transferTo(sink);
+  }
+
+  @Benchmark
+  public long perCallBuffer() throws IOException {
+    InputStream in = source();
+    OutputStream out = sink;
+    byte[] buffer = new byte[8192];
+    long total = 0;
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      total += read;
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long fileChannelTransfer() throws IOException {
+    WritableByteChannel target = Channels.newChannel(sink);
+    long position = 0;
+    while (position < size) {
+      position += channel.transferTo(position, size - position, target);
+    }
+    return position;
+  }
+
+  private InputStream source() {
+    return new FilterInputStream(new ByteArrayInputStream(data)) {
+    };
+  }
+
+  private static final class ScratchOutputStream extends OutputStream {
+
+    private final byte[] scratch = new byte[Streams.BUFFER_SIZE];
+
+    @Override
+    public void write(int b) {
+      scratch[0] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      while (len > 0) {
+        int n = Math.min(len, scratch.length);
+        System.arraycopy(b, off, scratch, 0, n);
+        off += n;
+        len -= n;
+      }
+    }
+  }
+}
@@ -1,6 +1,10 @@
 package com.cbs.uploads_service;
 
+import com.cbs.uploads_service.services.OverloadedException;
+import com.cbs.uploads_service.services.StorageUnavailableException;
+import com.cbs.uploads_service.services.UploadTooLargeException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -30,9 +34,81 @@ public class GlobalExceptionHandler {
     return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
   }
 
+  @ExceptionHandler(UploadTooLargeException.class)
+  @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+  public ResponseEntity<Map<String, Object>> handleUploadTooLargeException(UploadTooLargeException ex) {
+    log.warn("Upload too large: {}", ex.getMessage());
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("error", "PAYLOAD_TOO_LARGE");
+    response.put("message", ex.getMessage());
+    response.put("status", HttpStatus.PAYLOAD_TOO_LARGE.value());
+    response.put("timestamp", LocalDateTime.now());
+
+    return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public ResponseEntity<Map<String, Object>> handleIllegalArgumentException(IllegalArgumentException ex) {
+    log.warn("Bad request: {}", ex.getMessage());
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("error", "BAD_REQUEST");
+    response.put("message", ex.getMessage());
+    response.put("status", HttpStatus.BAD_REQUEST.value());
+    response.put("timestamp", LocalDateTime.now());
+
+    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+  }
+
+  @ExceptionHandler(OverloadedException.class)
+  @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+  public ResponseEntity<Map<String, Object>> handleOverloadedException(OverloadedException ex) {
+    log.warn("Request shed: {}", ex.getMessage());
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("error", "TOO_MANY_REQUESTS");
+    response.put("message", ex.getMessage());
+    response.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+    response.put("timestamp", LocalDateTime.now());
+
+    // Whole seconds, rounded up so clients never retry too early
+    long retryAfter = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+        .body(response);
+  }
+
+  @ExceptionHandler(StorageUnavailableException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public ResponseEntity<Map<String, Object>> handleStorageUnavailableException(StorageUnavailableException ex) {
+    log.warn("Storage unavailable: {}", ex.getMessage());
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("error", "SERVICE_UNAVAILABLE");
+    response.put("message", ex.getMessage());
+    response.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+    response.put("timestamp", LocalDateTime.now());
+
+    long retryAfter = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+        .body(response);
+  }
+
   @ExceptionHandler(RuntimeException.class)
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
   public ResponseEntity<Map<String, Object>> handleRuntimeException(RuntimeException ex) {
+    // Storage errors reach here wrapped by the service that hit them
+    StorageUnavailableException unavailable = StorageUnavailableException.find(ex);
+    if (unavailable != null) {
+      return handleStorageUnavailableException(unavailable);
+    }
+    UploadTooLargeException tooLarge = UploadTooLargeException.find(ex);
+    if (tooLarge != null) {
+      return handleUploadTooLargeException(tooLarge);
+    }
     log.error("Runtime error: {}", ex.getMessage());
 
     Map<String, Object> response = new HashMap<>();
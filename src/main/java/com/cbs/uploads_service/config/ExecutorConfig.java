@@ -0,0 +1,92 @@
+package com.cbs.uploads_service.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+  /**
+   * Worker pool for batch uploads. Its size is the global limit on concurrent
+   * uploads to MinIO; per-request limits are applied by the caller. The bounded queue
+   * keeps files waiting for a thread from piling up when the upload bulkhead is off.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor uploadExecutor(UploadProperties properties) {
+    int threads = properties.getBatch().getMaxConcurrency();
+
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setQueueCapacity(properties.getBatch().getQueueCapacity());
+    executor.setThreadNamePrefix("upload-");
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    executor.setAwaitTerminationSeconds(60);
+    return executor;
+  }
+
+  /**
+   * Runs the removeObjects batches of bulk deletes, apart from uploads so a large prefix
+   * delete cannot take their slots. Its size is the global limit on batches in flight;
+   * the per-request limit is applied by the caller.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor deleteExecutor(UploadProperties properties) {
+    int threads = properties.getBulkDelete().getMaxConcurrency();
+
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setThreadNamePrefix("delete-");
+    return executor;
+  }
+
+  /**
+   * Prefetches objects for ZIP archive downloads. Its size is the global limit on
+   * objects read ahead; the per-archive window is applied by the caller.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor archiveExecutor(UploadProperties properties) {
+    int threads = properties.getArchive().getMaxConcurrency();
+
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setThreadNamePrefix("archive-");
+    return executor;
+  }
+
+  /**
+   * Decodes and resizes images for derivative requests, so image work cannot take
+   * over the request threads. The bounded queue makes excess renders fail fast.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor derivativeExecutor(UploadProperties properties) {
+    int threads = properties.getDerivatives().getMaxConcurrency();
+
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setQueueCapacity(properties.getDerivatives().getQueueCapacity());
+    executor.setThreadNamePrefix("derivative-");
+    return executor;
+  }
+
+  /**
+   * Runs durable event listeners after the request that published the event. The
+   * bounded queue keeps a burst of events from growing without limit; events that do
+   * not fit are delivered by the next resubmission.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor eventExecutor(UploadProperties properties) {
+    int threads = properties.getEvents().getMaxConcurrency();
+
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setQueueCapacity(properties.getEvents().getQueueCapacity());
+    executor.setThreadNamePrefix("event-");
+    return executor;
+  }
+}
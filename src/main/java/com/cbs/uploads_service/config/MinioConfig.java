@@ -1,12 +1,25 @@
 package com.cbs.uploads_service.config;
 
+import com.cbs.uploads_service.services.MultipartMinioClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import lombok.Getter;
 import lombok.Setter;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @ConfigurationProperties(prefix = "minio")
@@ -29,13 +42,188 @@ public class MinioConfig {
   @Value("${minio.secure}")
   private boolean secure;
 
+  /**
+   * Nodes of a distributed deployment to spread calls over, see
+   * {@link MinioEndpointRouter}. Requests are still signed for {@code minio.endpoint},
+   * which presigned URLs point to as well; when empty, everything goes there.
+   */
+  private List<String> endpoints = new ArrayList<>();
+
+  private Http http = new Http();
+
+  private Routing routing = new Routing();
+
+  @Bean
+  public MinioEndpointRouter minioEndpointRouter(MeterRegistry meterRegistry) {
+    return new MinioEndpointRouter(endpoints.stream().map(this::endpointUrl).toList(), routing, meterRegistry);
+  }
 
+  /**
+   * Shared by all MinIO clients, so they use one connection pool and one dispatcher.
+   */
   @Bean
-  public MinioClient minioClient() {
+  public OkHttpClient minioHttpClient(MeterRegistry meterRegistry, MinioEndpointRouter minioEndpointRouter) {
+    ConnectionPool pool = new ConnectionPool(
+        http.getMaxIdleConnections(), http.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(http.getMaxRequests());
+    dispatcher.setMaxRequestsPerHost(http.getMaxRequestsPerHost());
+
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .connectionPool(pool)
+        .dispatcher(dispatcher)
+        .connectTimeout(http.getConnectTimeout())
+        .readTimeout(http.getReadTimeout())
+        .writeTimeout(http.getWriteTimeout())
+        .callTimeout(http.getCallTimeout())
+        .retryOnConnectionFailure(true)
+        .protocols(http.isHttp2()
+            ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+            : List.of(Protocol.HTTP_1_1))
+        .eventListenerFactory(call -> new MinioHttpMetrics.CallListener(meterRegistry));
+
+    if (minioEndpointRouter.isEnabled()) {
+      builder.addInterceptor(minioEndpointRouter);
+    }
+    if (http.getSendBufferSize() != null || http.getReceiveBufferSize() != null) {
+      builder.socketFactory(new MinioHttpMetrics.BufferedSocketFactory(
+          http.getSendBufferSize(), http.getReceiveBufferSize()));
+    }
+
+    MinioHttpMetrics.bindPool(meterRegistry, pool, dispatcher);
+    return builder.build();
+  }
+
+  @Bean
+  public MinioClient minioClient(OkHttpClient minioHttpClient) {
     return MinioClient.builder()
-        .endpoint(endpoint)
+        .endpoint(endpointUrl())
+        .credentials(accessKey, secretKey)
+        .httpClient(minioHttpClient)
+        .build();
+  }
+
+  @Bean
+  public MinioAsyncClient minioAsyncClient(OkHttpClient minioHttpClient) {
+    return MinioAsyncClient.builder()
+        .endpoint(endpointUrl())
         .credentials(accessKey, secretKey)
+        .httpClient(minioHttpClient)
         .build();
   }
 
+  @Bean
+  public MultipartMinioClient multipartMinioClient(OkHttpClient minioHttpClient) {
+    return new MultipartMinioClient(
+        MinioAsyncClient.builder()
+            .endpoint(endpointUrl())
+            .credentials(accessKey, secretKey)
+            .httpClient(minioHttpClient)
+            .build()
+    );
+  }
+
+  /**
+   * Applies {@code minio.secure} to an endpoint given without a scheme, and refuses an
+   * endpoint whose scheme contradicts it.
+   */
+  private String endpointUrl() {
+    return endpointUrl(endpoint);
+  }
+
+  private String endpointUrl(String endpoint) {
+    if (!endpoint.contains("://")) {
+      return (secure ? "https://" : "http://") + endpoint;
+    }
+    if (endpoint.startsWith("https://") != secure) {
+      throw new IllegalStateException(
+          "minio.secure=" + secure + " does not match the scheme of minio.endpoint " + endpoint);
+    }
+    return endpoint;
+  }
+
+  @Getter
+  @Setter
+  public static class Http {
+
+    /**
+     * Idle connections kept in the pool.
+     */
+    private int maxIdleConnections = 32;
+
+    /**
+     * How long an idle connection stays in the pool.
+     */
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    /**
+     * Concurrent asynchronous calls; further calls queue in the dispatcher.
+     */
+    private int maxRequests = 128;
+
+    /**
+     * Concurrent asynchronous calls to the MinIO host. Calls are queued by the host of
+     * {@code minio.endpoint}, so with {@code minio.endpoints} this bounds all nodes together.
+     */
+    private int maxRequestsPerHost = 64;
+
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    private Duration readTimeout = Duration.ofMinutes(5);
+
+    private Duration writeTimeout = Duration.ofMinutes(5);
+
+    /**
+     * Limit for a whole call including the body; zero means none.
+     */
+    private Duration callTimeout = Duration.ZERO;
+
+    /**
+     * Offer HTTP/2 via ALPN. Only takes effect over TLS.
+     */
+    private boolean http2 = false;
+
+    /**
+     * Socket send buffer (SO_SNDBUF); the OS default when unset.
+     */
+    private DataSize sendBufferSize;
+
+    /**
+     * Socket receive buffer (SO_RCVBUF); the OS default when unset.
+     */
+    private DataSize receiveBufferSize;
+  }
+
+  @Getter
+  @Setter
+  public static class Routing {
+
+    /**
+     * Liveness endpoint probed on every node.
+     */
+    private String healthCheckPath = "/minio/health/live";
+
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+    private Duration healthCheckTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Failed health checks in a row that take a node out of rotation.
+     */
+    private int unhealthyThreshold = 2;
+
+    /**
+     * Passed health checks in a row that bring it back.
+     */
+    private int healthyThreshold = 2;
+
+    /**
+     * Calls in a row failing with a network error or a 5xx that take a node out of
+     * rotation for {@code eject-duration}, before health checks notice.
+     */
+    private int failureThreshold = 5;
+
+    private Duration ejectDuration = Duration.ofSeconds(30);
+  }
 }
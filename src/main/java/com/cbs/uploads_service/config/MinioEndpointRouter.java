@@ -0,0 +1,312 @@
+package com.cbs.uploads_service.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the calls of the MinIO clients over the nodes of a distributed deployment,
+ * without a load balancer in between.
+ * <p>
+ * Requests keep the Host header of {@code minio.endpoint} they were signed for, only
+ * the address they are sent to changes. Of two random available nodes the one with
+ * the lower outstanding requests times recent latency gets the call, which keeps load
+ * off a slow node without herding onto the single best one. A call that cannot connect
+ * is sent to another node, since nothing reached the first. Nodes are taken out of
+ * rotation after {@code failure-threshold} failed calls in a row, for
+ * {@code eject-duration}, or after {@code unhealthy-threshold} failed health checks
+ * until {@code healthy-threshold} pass again. When no node is available, all are used.
+ * <p>
+ * Published per {@code endpoint} as {@code minio.endpoint.requests{outcome}} (time to
+ * the response headers), {@code minio.endpoint.outstanding},
+ * {@code minio.endpoint.latency} (moving average), {@code minio.endpoint.available}
+ * and {@code minio.endpoint.ejections}.
+ */
+@Slf4j
+public class MinioEndpointRouter implements Interceptor {
+
+  private static final double LATENCY_WEIGHT = 0.2;
+
+  private final List<Node> nodes = new ArrayList<>();
+  private final MinioConfig.Routing config;
+  private final MeterRegistry registry;
+  private final OkHttpClient healthClient;
+
+  public MinioEndpointRouter(List<String> endpointUrls, MinioConfig.Routing config, MeterRegistry registry) {
+    this.config = config;
+    this.registry = registry;
+    this.healthClient = new OkHttpClient.Builder()
+        .connectTimeout(config.getHealthCheckTimeout())
+        .callTimeout(config.getHealthCheckTimeout())
+        .retryOnConnectionFailure(false)
+        .build();
+
+    for (String endpointUrl : endpointUrls) {
+      HttpUrl url = HttpUrl.get(endpointUrl);
+      Node node = new Node(url.host() + ":" + url.port(), url);
+      nodes.add(node);
+
+      Gauge.builder("minio.endpoint.outstanding", node.outstanding, AtomicInteger::get)
+          .description("Calls sent to the node and not finished")
+          .tag("endpoint", node.name)
+          .register(registry);
+      Gauge.builder("minio.endpoint.latency", node, n -> n.latencyNanos / 1e9)
+          .description("Moving average of the time to the response headers")
+          .tag("endpoint", node.name)
+          .baseUnit("seconds")
+          .register(registry);
+      Gauge.builder("minio.endpoint.available", node, n -> n.isAvailable(System.nanoTime()) ? 1 : 0)
+          .description("1 while the node is in rotation")
+          .tag("endpoint", node.name)
+          .register(registry);
+      node.ejections = Counter.builder("minio.endpoint.ejections")
+          .description("Times the node was taken out of rotation")
+          .tag("endpoint", node.name)
+          .register(registry);
+    }
+  }
+
+  public boolean isEnabled() {
+    return !nodes.isEmpty();
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    Node node = choose(null);
+    if (node == null) {
+      return chain.proceed(request);
+    }
+
+    try {
+      return send(chain, request, node);
+    } catch (ConnectException e) {
+      // Nothing was sent, so another node can take the call whatever it is
+      Node other = choose(node);
+      if (other == null) {
+        throw e;
+      }
+      log.debug("Could not connect to {}, sending to {}: {}", node.name, other.name, e.getMessage());
+      return send(chain, request, other);
+    }
+  }
+
+  private Response send(Chain chain, Request request, Node node) throws IOException {
+    HttpUrl url = request.url().newBuilder()
+        .scheme(node.url.scheme())
+        .host(node.url.host())
+        .port(node.url.port())
+        .build();
+    Request.Builder routed = request.newBuilder().url(url);
+    if (request.header("Host") == null) {
+      routed.header("Host", hostHeader(request.url()));
+    }
+
+    node.outstanding.incrementAndGet();
+    AtomicBoolean finished = new AtomicBoolean();
+    Runnable finish = () -> {
+      if (finished.compareAndSet(false, true)) {
+        node.outstanding.decrementAndGet();
+      }
+    };
+
+    long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(routed.build());
+    } catch (IOException e) {
+      finish.run();
+      record(node, System.nanoTime() - start, false);
+      throw e;
+    }
+    record(node, System.nanoTime() - start, response.code() < 500);
+
+    ResponseBody body = response.body();
+    if (body == null) {
+      finish.run();
+      return response;
+    }
+    // The node stays busy until the body has been read, which for downloads is most of the call
+    ForwardingSource source = new ForwardingSource(body.source()) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          finish.run();
+        }
+      }
+    };
+    return response.newBuilder()
+        .body(ResponseBody.create(Okio.buffer(source), body.contentType(), body.contentLength()))
+        .build();
+  }
+
+  /**
+   * Of two random available nodes other than {@code exclude}, the one with the lower
+   * score; null when there is no other node.
+   */
+  Node choose(Node exclude) {
+    long now = System.nanoTime();
+    List<Node> candidates = new ArrayList<>(nodes.size());
+    for (Node node : nodes) {
+      if (node != exclude && node.isAvailable(now)) {
+        candidates.add(node);
+      }
+    }
+    if (candidates.isEmpty()) {
+      // Better to try nodes that may have recovered than to fail every call
+      for (Node node : nodes) {
+        if (node != exclude) {
+          candidates.add(node);
+        }
+      }
+    }
+
+    if (candidates.size() <= 1) {
+      return candidates.isEmpty() ? null : candidates.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(candidates.size());
+    int second = random.nextInt(candidates.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    Node a = candidates.get(first);
+    Node b = candidates.get(second);
+    return a.score() <= b.score() ? a : b;
+  }
+
+  void record(Node node, long latencyNanos, boolean success) {
+    Timer.builder("minio.endpoint.requests")
+        .tag("endpoint", node.name)
+        .tag("outcome", success ? "success" : "error")
+        .register(registry)
+        .record(latencyNanos, TimeUnit.NANOSECONDS);
+
+    if (success) {
+      node.failures.set(0);
+      node.observe(latencyNanos);
+      return;
+    }
+    if (node.failures.incrementAndGet() >= config.getFailureThreshold()) {
+      node.failures.set(0);
+      node.ejectedUntil = System.nanoTime() + config.getEjectDuration().toNanos();
+      node.ejections.increment();
+      log.warn("MinIO node {} failed {} calls in a row, out of rotation for {}",
+          node.name, config.getFailureThreshold(), config.getEjectDuration());
+    }
+  }
+
+  /**
+   * Probes every node's liveness endpoint; the answers arrive on OkHttp's threads.
+   */
+  @Scheduled(fixedDelayString = "${minio.routing.health-check-interval:5s}")
+  public void checkHealth() {
+    for (Node node : nodes) {
+      Request request = new Request.Builder()
+          .url(node.url.resolve(config.getHealthCheckPath()))
+          .get()
+          .build();
+      healthClient.newCall(request).enqueue(new Callback() {
+        @Override
+        public void onResponse(Call call, Response response) {
+          try (response) {
+            checked(node, response.isSuccessful());
+          }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+          checked(node, false);
+        }
+      });
+    }
+  }
+
+  void checked(Node node, boolean passed) {
+    synchronized (node) {
+      if (passed) {
+        node.checksFailed = 0;
+        if (!node.healthy && ++node.checksPassed >= config.getHealthyThreshold()) {
+          node.healthy = true;
+          node.ejectedUntil = 0;
+          log.info("MinIO node {} is healthy again, back in rotation", node.name);
+        }
+      } else {
+        node.checksPassed = 0;
+        if (node.healthy && ++node.checksFailed >= config.getUnhealthyThreshold()) {
+          node.healthy = false;
+          node.ejections.increment();
+          log.warn("MinIO node {} failed {} health checks, out of rotation", node.name, node.checksFailed);
+        }
+      }
+    }
+  }
+
+  List<Node> nodes() {
+    return nodes;
+  }
+
+  private static String hostHeader(HttpUrl url) {
+    return url.port() == HttpUrl.defaultPort(url.scheme()) ? url.host() : url.host() + ":" + url.port();
+  }
+
+  static final class Node {
+
+    final String name;
+    final HttpUrl url;
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    Counter ejections;
+
+    volatile double latencyNanos;
+    volatile boolean healthy = true;
+    volatile long ejectedUntil;
+    int checksPassed;
+    int checksFailed;
+
+    Node(String name, HttpUrl url) {
+      this.name = name;
+      this.url = url;
+    }
+
+    boolean isAvailable(long now) {
+      return healthy && (ejectedUntil == 0 || now - ejectedUntil >= 0);
+    }
+
+    /**
+     * Expected wait behind the calls already sent; a node without samples yet counts
+     * as fast, so it gets some traffic to measure.
+     */
+    double score() {
+      return (outstanding.get() + 1) * Math.max(1, latencyNanos);
+    }
+
+    synchronized void observe(long nanos) {
+      latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + LATENCY_WEIGHT * (nanos - latencyNanos);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package com.cbs.uploads_service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import org.springframework.util.unit.DataSize;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the OkHttp transport behind the MinIO clients:
+ * <ul>
+ *   <li>{@code minio.http.connections{state=active|idle}} - connection pool utilization</li>
+ *   <li>{@code minio.http.calls{state=running|queued}} - dispatcher load</li>
+ *   <li>{@code minio.http.connect{outcome}} - TCP/TLS connect latency</li>
+ *   <li>{@code minio.http.ttfb} - time from call start to the response headers</li>
+ * </ul>
+ */
+final class MinioHttpMetrics {
+
+  private MinioHttpMetrics() {
+  }
+
+  static void bindPool(MeterRegistry registry, ConnectionPool pool, Dispatcher dispatcher) {
+    Gauge.builder("minio.http.connections", pool, p -> p.connectionCount() - p.idleConnectionCount())
+        .tag("state", "active")
+        .register(registry);
+    Gauge.builder("minio.http.connections", pool, ConnectionPool::idleConnectionCount)
+        .tag("state", "idle")
+        .register(registry);
+    Gauge.builder("minio.http.calls", dispatcher, Dispatcher::runningCallsCount)
+        .tag("state", "running")
+        .register(registry);
+    Gauge.builder("minio.http.calls", dispatcher, Dispatcher::queuedCallsCount)
+        .tag("state", "queued")
+        .register(registry);
+  }
+
+  /**
+   * One instance per call, so the start times need no synchronization.
+   */
+  static final class CallListener extends EventListener {
+
+    private final MeterRegistry registry;
+    private long callStart;
+    private long connectStart;
+
+    CallListener(MeterRegistry registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    public void callStart(Call call) {
+      callStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+      connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+      recordConnect("success");
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol, IOException e) {
+      recordConnect("failure");
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+      Timer.builder("minio.http.ttfb")
+          .description("Time from the start of a MinIO call to its response headers")
+          .register(registry)
+          .record(System.nanoTime() - callStart, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordConnect(String outcome) {
+      Timer.builder("minio.http.connect")
+          .description("Time to open a connection to MinIO")
+          .tag("outcome", outcome)
+          .register(registry)
+          .record(System.nanoTime() - connectStart, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Applies socket buffer sizes before connecting, so the TCP window can scale to them.
+   */
+  static final class BufferedSocketFactory extends SocketFactory {
+
+    private final SocketFactory delegate = SocketFactory.getDefault();
+    private final DataSize sendBufferSize;
+    private final DataSize receiveBufferSize;
+
+    BufferedSocketFactory(DataSize sendBufferSize, DataSize receiveBufferSize) {
+      this.sendBufferSize = sendBufferSize;
+      this.receiveBufferSize = receiveBufferSize;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      return configure(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      return connect(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+      return connect(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+      return connect(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+        throws IOException {
+      return connect(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort));
+    }
+
+    private Socket connect(InetSocketAddress remote) throws IOException {
+      Socket socket = createSocket();
+      socket.connect(remote);
+      return socket;
+    }
+
+    private Socket connect(InetSocketAddress remote, InetSocketAddress local) throws IOException {
+      Socket socket = createSocket();
+      socket.bind(local);
+      socket.connect(remote);
+      return socket;
+    }
+
+    private Socket configure(Socket socket) throws IOException {
+      if (sendBufferSize != null) {
+        socket.setSendBufferSize((int) sendBufferSize.toBytes());
+      }
+      if (receiveBufferSize != null) {
+        socket.setReceiveBufferSize((int) receiveBufferSize.toBytes());
+      }
+      return socket;
+    }
+  }
+}
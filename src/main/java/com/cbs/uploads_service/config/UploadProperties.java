@@ -0,0 +1,585 @@
+package com.cbs.uploads_service.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "uploads")
+@Getter
+@Setter
+public class UploadProperties {
+
+  private Batch batch = new Batch();
+  private Streaming streaming = new Streaming();
+  private Multipart multipart = new Multipart();
+  private Presign presign = new Presign();
+  private Index index = new Index();
+  private StatCache statCache = new StatCache();
+  private CacheControl cacheControl = new CacheControl();
+  private DiskCache diskCache = new DiskCache();
+  private Keys keys = new Keys();
+  private BulkDelete bulkDelete = new BulkDelete();
+  private Archive archive = new Archive();
+  private Derivatives derivatives = new Derivatives();
+  private Dedup dedup = new Dedup();
+  private Compression compression = new Compression();
+  private Async async = new Async();
+  private Bulkheads bulkheads = new Bulkheads();
+  private Resilience resilience = new Resilience();
+  private Events events = new Events();
+
+  @Getter
+  @Setter
+  public static class Batch {
+
+    /**
+     * Maximum number of files uploaded in parallel across all batch requests.
+     */
+    private int maxConcurrency = 16;
+
+    /**
+     * Maximum number of files of a single batch request uploaded in parallel.
+     */
+    private int maxConcurrencyPerRequest = 4;
+
+    /**
+     * Files waiting for an upload thread. Each request queues at most
+     * {@code max-concurrency-per-request} files and the upload bulkhead bounds the
+     * requests, so the default of 16 x 4 is only reached with the bulkhead off; files
+     * beyond it fail in their own result entry.
+     */
+    private int queueCapacity = 64;
+  }
+
+  @Getter
+  @Setter
+  public static class Streaming {
+
+    /**
+     * Part size used when streaming request bodies into MinIO. This is also the
+     * upper bound of memory buffered per streaming upload (minimum 5MB).
+     */
+    private DataSize partSize = DataSize.ofMegabytes(8);
+
+    /**
+     * Largest body accepted by the streaming upload. Longer bodies are refused with
+     * 413, up front when Content-Length announces it, otherwise once the limit is read.
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(5);
+  }
+
+  @Getter
+  @Setter
+  public static class Multipart {
+
+    /**
+     * Largest part accepted by the resumable upload API. Parts are buffered by the
+     * MinIO client before they are sent, so this bounds memory per part request.
+     */
+    private DataSize maxPartSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Sessions initiated longer ago than this are aborted by the sweeper.
+     */
+    private Duration sessionTtl = Duration.ofHours(24);
+  }
+
+  @Getter
+  @Setter
+  public static class Presign {
+
+    /**
+     * Maximum number of presigned URLs kept in memory (LRU eviction).
+     */
+    private long cacheMaxSize = 100_000;
+
+    /**
+     * A cached URL is re-signed once its remaining validity drops below this
+     * margin (capped at half of the URL lifetime).
+     */
+    private Duration refreshBeforeExpiry = Duration.ofDays(1);
+  }
+
+  @Getter
+  @Setter
+  public static class Index {
+
+    /**
+     * Serve search from the in-process metadata index.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Snapshot of the index, loaded at startup so the service does not wait for a full scan.
+     */
+    private Path snapshotFile = Path.of("data", "object-index.snapshot");
+
+    /**
+     * Full rescan interval, reconciling changes made outside this service (e.g. presigned uploads).
+     */
+    private Duration rescanInterval = Duration.ofHours(6);
+
+    /**
+     * How often the age of the last rescan is checked against {@code rescan-interval}.
+     */
+    private Duration rescanCheckInterval = Duration.ofMinutes(1);
+
+    /**
+     * How often a changed index is written to the snapshot file.
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+  }
+
+  @Getter
+  @Setter
+  public static class StatCache {
+
+    /**
+     * Maximum number of object stats kept in memory.
+     */
+    private long maxSize = 50_000;
+
+    /**
+     * How long the stat of an existing object is reused.
+     */
+    private Duration ttl = Duration.ofSeconds(30);
+
+    /**
+     * How long a missing key is remembered as missing.
+     */
+    private Duration negativeTtl = Duration.ofSeconds(5);
+  }
+
+  @Getter
+  @Setter
+  public static class CacheControl {
+
+    /**
+     * Cache-Control sent for objects that match no rule.
+     */
+    private String defaultPolicy = "no-cache";
+
+    /**
+     * Per-key policies, checked in order; the first matching rule wins.
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Rule {
+
+      /**
+       * Java regular expression matched against the start of the object key, so a
+       * literal prefix must escape metacharacters such as {@code .} and {@code +}.
+       */
+      private String pattern;
+
+      /**
+       * Cache-Control header value for matching objects.
+       */
+      private String policy;
+    }
+  }
+
+  @Getter
+  @Setter
+  public static class DiskCache {
+
+    private boolean enabled = true;
+
+    /**
+     * Directory of its own for cached object bodies, emptied of them at startup. The
+     * service refuses to start if it holds files the cache did not create.
+     */
+    private Path directory = Path.of("data", "object-cache");
+
+    /**
+     * Total size of cached bodies; the least valuable entries are evicted beyond it.
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(2);
+
+    /**
+     * Larger objects are always streamed from MinIO.
+     */
+    private DataSize maxObjectSize = DataSize.ofMegabytes(64);
+  }
+
+  @Getter
+  @Setter
+  public static class Keys {
+
+    /**
+     * Put uploads under a yyyyMM/ prefix of the upload month.
+     */
+    private boolean datePartitioned = true;
+
+    /**
+     * Spread keys over this many hash-derived prefixes (at most 256); 0 disables sharding.
+     */
+    private int shards = 0;
+  }
+
+  @Getter
+  @Setter
+  public static class BulkDelete {
+
+    /**
+     * Batches of up to 1000 keys deleted in parallel by a single bulk delete request.
+     */
+    private int concurrency = 4;
+
+    /**
+     * Maximum number of batches deleted at once across all bulk delete requests.
+     */
+    private int maxConcurrency = 8;
+  }
+
+  @Getter
+  @Setter
+  public static class Archive {
+
+    /**
+     * Objects fetched ahead of the one being written to a ZIP archive.
+     */
+    private int prefetch = 4;
+
+    /**
+     * Bytes of each prefetched object read ahead into memory; smaller objects are
+     * fetched completely. Bounds archive memory to prefetch x prefetch-size.
+     */
+    private DataSize prefetchSize = DataSize.ofMegabytes(1);
+
+    /**
+     * Maximum number of objects prefetched at once across all archive downloads.
+     */
+    private int maxConcurrency = 16;
+
+    /**
+     * Maximum number of 'path' parameters of one archive request; larger sets go by prefix.
+     */
+    private int maxPaths = 1000;
+
+    /**
+     * Content types that are already compressed and are stored without deflating.
+     */
+    private List<String> storedTypes = new ArrayList<>(List.of(
+        "image/jpeg", "image/png", "image/gif", "image/webp", "video/*", "audio/*",
+        "application/pdf", "application/zip", "application/gzip", "application/x-7z-compressed",
+        "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+        "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+        "application/vnd.openxmlformats-officedocument.presentationml.presentation"));
+  }
+
+  @Getter
+  @Setter
+  public static class Derivatives {
+
+    /**
+     * Images decoded and resized at once; further requests queue behind them.
+     */
+    private int maxConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * Renders allowed to wait for a worker before new ones are refused with 503.
+     */
+    private int queueCapacity = 64;
+
+    /**
+     * How long a request waits for its derivative before giving up with 503.
+     */
+    private Duration renderTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Largest width or height that can be requested.
+     */
+    private int maxDimension = 2048;
+
+    /**
+     * Larger source objects are not resized.
+     */
+    private DataSize maxSourceSize = DataSize.ofMegabytes(32);
+
+    /**
+     * Sources with more pixels are refused before decoding, as a guard against
+     * decompression bombs.
+     */
+    private long maxSourcePixels = 50_000_000L;
+
+    /**
+     * JPEG quality (1-100) used when the request does not give one.
+     */
+    private int defaultQuality = 80;
+
+    /**
+     * Memory held by rendered derivatives.
+     */
+    private DataSize cacheSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Widths rendered in the background right after an image is uploaded.
+     */
+    private List<Integer> pregenerateWidths = new ArrayList<>();
+  }
+
+  @Getter
+  @Setter
+  public static class Dedup {
+
+    /**
+     * Store uploaded content once per SHA-256 and write uploads as references to it.
+     * Duplicates are found through the object index, which must be enabled.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Key prefix of the content blobs; it is hidden from listings.
+     */
+    private String blobPrefix = ".blobs/";
+
+    /**
+     * Interval of the sweep deleting blobs no upload references any more.
+     */
+    private Duration sweepInterval = Duration.ofHours(6);
+  }
+
+  @Getter
+  @Setter
+  public static class Compression {
+
+    /**
+     * Compress uploads of compressible content types before storing them.
+     */
+    private boolean enabled = false;
+
+    /**
+     * gzip, which every client accepts as is, or zstd, which compresses better and faster.
+     */
+    private String codec = "gzip";
+
+    private int gzipLevel = 6;
+
+    private int zstdLevel = 3;
+
+    /**
+     * Uploads of a known size below this are stored raw.
+     */
+    private DataSize minSize = DataSize.ofKilobytes(1);
+
+    /**
+     * Content types that are compressed; wildcards such as text/* and application/*+json work.
+     */
+    private List<String> types = new ArrayList<>(List.of(
+        "text/*", "application/json", "application/*+json", "application/x-ndjson",
+        "application/xml", "application/*+xml", "application/javascript", "application/x-yaml",
+        "application/csv", "image/svg+xml"));
+  }
+
+  @Getter
+  @Setter
+  public static class Async {
+
+    /**
+     * Serve downloads, views, file info, presigned URLs and deletes on the MinIO async
+     * client, so request threads are released while MinIO answers. In-flight calls are
+     * then bounded by {@code minio.http.max-requests} instead of the Tomcat pool.
+     */
+    private boolean enabled = false;
+  }
+
+  /**
+   * Per-workload admission limits. Queued requests hold a request thread too, so the
+   * sum of all limits and queues should stay below {@code server.tomcat.threads.max}
+   * for unlimited endpoints such as the health check to keep answering.
+   */
+  @Getter
+  @Setter
+  public static class Bulkheads {
+
+    private boolean enabled = true;
+
+    /**
+     * Lower the limits while MinIO latency is above its usual level, down to a quarter
+     * of {@code max-concurrent}. The upload limit stays at {@code max-concurrent}, since
+     * upload latency follows the size and speed of the client's body.
+     */
+    private boolean adaptive = true;
+
+    /**
+     * How many times its usual latency MinIO may take before limits shrink.
+     */
+    private double latencyTolerance = 2.0;
+
+    /**
+     * Sent as Retry-After with 429 responses.
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    private Limit upload = new Limit(16, 16, Duration.ofSeconds(2));
+    private Limit download = new Limit(48, 16, Duration.ofSeconds(1));
+    private Limit list = new Limit(8, 8, Duration.ofSeconds(1));
+    private Limit metadata = new Limit(32, 32, Duration.ofMillis(500));
+
+    /**
+     * Bulk deletes, kept apart from listings since a batch of removals is slower than a
+     * page of keys and would otherwise shrink the list limit.
+     */
+    private Limit delete = new Limit(4, 8, Duration.ofSeconds(1));
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+
+      private int maxConcurrent;
+
+      /**
+       * Requests waiting for a slot; further ones are rejected at once.
+       */
+      private int maxQueue;
+
+      private Duration queueTimeout;
+    }
+  }
+
+  /**
+   * Retries, circuit breaker and hedged requests around the MinIO calls of
+   * {@link com.cbs.uploads_service.services.MinioService}.
+   */
+  @Getter
+  @Setter
+  public static class Resilience {
+
+    private boolean enabled = true;
+
+    /**
+     * Attempts of an idempotent call that failed with a network error or a 5xx,
+     * including the first one. Uploads are never retried.
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * Backoff before the first retry; it doubles with every further one, up to
+     * {@code max-backoff}, and the actual wait is a random fraction of it.
+     */
+    private Duration initialBackoff = Duration.ofMillis(50);
+
+    private Duration maxBackoff = Duration.ofSeconds(1);
+
+    private Breaker breaker = new Breaker();
+    private Hedging hedging = new Hedging();
+
+    @Getter
+    @Setter
+    public static class Breaker {
+
+      private boolean enabled = true;
+
+      /**
+       * Number of most recent calls the failure rate is computed over.
+       */
+      private int windowSize = 20;
+
+      /**
+       * Calls needed in the window before the breaker may open.
+       */
+      private int minimumCalls = 10;
+
+      private double failureRateThreshold = 0.5;
+
+      /**
+       * How long calls are rejected with 503 before trial calls are let through.
+       */
+      private Duration openDuration = Duration.ofSeconds(30);
+
+      private int halfOpenCalls = 3;
+    }
+
+    @Getter
+    @Setter
+    public static class Hedging {
+
+      private boolean enabled = true;
+
+      /**
+       * A stat or GetObject that has not answered within this latency percentile of its
+       * recent calls is sent a second time; the first answer wins.
+       */
+      private double percentile = 0.95;
+
+      /**
+       * Lower bound of the hedging delay, so fast calls are not doubled on jitter alone.
+       */
+      private Duration minDelay = Duration.ofMillis(20);
+
+      /**
+       * Recent calls needed before hedging starts.
+       */
+      private int minSamples = 50;
+
+      /**
+       * Hedged requests allowed as a fraction of all calls, which caps the extra load
+       * when MinIO is slow across the board.
+       */
+      private double budget = 0.1;
+    }
+  }
+
+  /**
+   * Asynchronous, durable delivery of upload and delete events, see
+   * {@link com.cbs.uploads_service.services.EventPublications}.
+   */
+  @Getter
+  @Setter
+  public static class Events {
+
+    /**
+     * Where the publication log is kept; it must survive restarts to redeliver events.
+     */
+    private Path directory = Path.of("data", "events");
+
+    /**
+     * Listener calls running in parallel.
+     */
+    private int maxConcurrency = 2;
+
+    /**
+     * Deliveries waiting for a thread; beyond that they are left to the next resubmission.
+     */
+    private int queueCapacity = 10_000;
+
+    /**
+     * How often failed deliveries are tried again. A publication that failed n times
+     * waits 2^(n-1) intervals before its next attempt.
+     */
+    private Duration resubmitInterval = Duration.ofMinutes(5);
+
+    /**
+     * Failed deliveries after which a publication is dropped and counted as
+     * {@code events.deliveries{outcome="dropped"}}.
+     */
+    private int maxAttempts = 8;
+
+    /**
+     * How often completions and failed attempts are written to the log; those of the
+     * last interval are lost on a crash, and their publications delivered once more.
+     * Publications themselves are synced to disk before the publisher goes on.
+     */
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    /**
+     * Log entries after which the log is rewritten with only incomplete publications.
+     */
+    private int compactAfter = 10_000;
+  }
+}
@@ -0,0 +1,19 @@
+package com.cbs.uploads_service.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class WebServerConfig {
+
+  /**
+   * Answers {@code Expect: 100-continue} only once the body is read, instead of before
+   * the request reaches the application. An upload that is complete without its body,
+   * such as content already stored, then never has the body sent.
+   */
+  @Bean
+  public TomcatConnectorCustomizer continueOnReadCustomizer() {
+    return connector -> connector.setProperty("continueResponseTiming", "onRead");
+  }
+}
@@ -0,0 +1,76 @@
+package com.cbs.uploads_service.controllers;
+
+import com.cbs.uploads_service.services.Bulkheads;
+import com.cbs.uploads_service.services.ConcurrencyLimit;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Takes a slot of the handler's {@link Bulkhead} before the request body is read, and
+ * gives it back when the response is complete; for streamed and asynchronous responses
+ * that is when the async request ends, not when the handler returns. A full bulkhead
+ * throws {@link com.cbs.uploads_service.services.OverloadedException}, answered with 429.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+  private static final String PERMIT = AdmissionInterceptor.class.getName() + ".permit";
+
+  private final Bulkheads bulkheads;
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (!bulkheads.isEnabled() || request.getDispatcherType() != DispatcherType.REQUEST
+        || !(handler instanceof HandlerMethod method)) {
+      return true;
+    }
+
+    Bulkhead bulkhead = method.getMethodAnnotation(Bulkhead.class);
+    if (bulkhead != null) {
+      request.setAttribute(PERMIT, bulkheads.acquire(bulkhead.value()));
+    }
+    return true;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (request.getAttribute(PERMIT) instanceof ConcurrencyLimit.Permit permit) {
+      request.getAsyncContext().addListener(new AsyncListener() {
+        @Override
+        public void onComplete(AsyncEvent event) {
+          permit.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+          permit.release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+          permit.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+      });
+    }
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+    // Also runs at the end of the async dispatch; releasing twice is harmless
+    if (!request.isAsyncStarted() && request.getAttribute(PERMIT) instanceof ConcurrencyLimit.Permit permit) {
+      permit.release();
+    }
+  }
+}
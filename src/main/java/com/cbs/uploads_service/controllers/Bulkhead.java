@@ -0,0 +1,19 @@
+package com.cbs.uploads_service.controllers;
+
+import com.cbs.uploads_service.services.Bulkheads;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Admits requests to the handler through the limit of the given workload, see
+ * {@link AdmissionInterceptor}. Handlers without it are never limited.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+
+  Bulkheads.Workload value();
+}
@@ -0,0 +1,219 @@
+package com.cbs.uploads_service.controllers;
+
+import com.cbs.uploads_service.dto.MultipartSession;
+import com.cbs.uploads_service.dto.UploadedPart;
+import com.cbs.uploads_service.response.Response;
+import com.cbs.uploads_service.services.Bulkheads.Workload;
+import com.cbs.uploads_service.services.MultipartUploadService;
+import com.cbs.uploads_service.services.StorageUnavailableException;
+import io.minio.errors.ErrorResponseException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Slf4j
+@RestController
+@RequestMapping("/uploads/multipart")
+@CrossOrigin(origins = "*", originPatterns = "*", maxAge = 3600)
+@RequiredArgsConstructor
+@Tag(name = "Resumable upload API", description = "Chunked uploads that can be resumed after a failure")
+public class MultipartUploadController {
+
+  // Answers about the parts the client sent, such as a part below 5MB that is not the last
+  private static final Set<String> CLIENT_ERRORS = Set.of("EntityTooSmall", "InvalidPart", "InvalidPartOrder");
+
+  private final MultipartUploadService service;
+
+  /**
+   * Start a resumable upload
+   * POST /api/files/multipart?fileName=xxx
+   */
+  @Operation(
+      summary = "Initiate a resumable upload",
+      description = "Start a multipart upload session. The returned uploadId and fileName identify the session " +
+          "in every following call."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Session created"),
+      @ApiResponse(responseCode = "500", description = "Internal server error")
+  })
+  @PostMapping
+  @Bulkhead(Workload.METADATA)
+  public ResponseEntity<MultipartSession> initiate(
+      @Parameter(description = "Original file name", required = true)
+      @RequestParam("fileName") String fileName,
+
+      @Parameter(description = "Optional dir path")
+      @RequestParam(value = "dir", required = false) String dir,
+
+      @Parameter(description = "Content type of the final object")
+      @RequestParam(value = "contentType", required = false) String contentType
+  ) {
+    return ResponseEntity.ok(service.initiate(fileName, contentType, dir));
+  }
+
+  /**
+   * Upload one part
+   * PUT /api/files/multipart/{uploadId}/parts/{partNumber}?path=xxx
+   */
+  @Operation(
+      summary = "Upload a part",
+      description = "Upload the raw request body as part 'partNumber' (1-10000). Parts can be sent in parallel " +
+          "and in any order; re-sending a part number replaces it. Every part except the last must be at least 5MB."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Part stored"),
+      @ApiResponse(responseCode = "400", description = "Invalid part number or size"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found")
+  })
+  @PutMapping("/{uploadId}/parts/{partNumber}")
+  @Bulkhead(Workload.UPLOAD)
+  public ResponseEntity<Object> uploadPart(
+      @PathVariable("uploadId") String uploadId,
+      @PathVariable("partNumber") int partNumber,
+      @RequestParam("path") String filePath,
+      HttpServletRequest request
+  ) throws IOException {
+    try {
+      UploadedPart part = service.uploadPart(
+          filePath, uploadId, partNumber, request.getInputStream(), request.getContentLengthLong());
+      return ResponseEntity.ok()
+          .header(HttpHeaders.ETAG, "\"" + part.getEtag() + "\"")
+          .body(part);
+    } catch (RuntimeException e) {
+      return failure("Error uploading part", e);
+    }
+  }
+
+  /**
+   * List uploaded parts
+   * GET /api/files/multipart/{uploadId}/parts?path=xxx
+   */
+  @Operation(
+      summary = "List uploaded parts",
+      description = "List the parts that already landed, so a client can resume by sending only the missing ones."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Parts listed"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found")
+  })
+  @GetMapping("/{uploadId}/parts")
+  @Bulkhead(Workload.METADATA)
+  public ResponseEntity<Object> listParts(
+      @PathVariable("uploadId") String uploadId,
+      @RequestParam("path") String filePath
+  ) {
+    try {
+      List<UploadedPart> parts = service.listParts(filePath, uploadId);
+      return ResponseEntity.ok(parts);
+    } catch (RuntimeException e) {
+      return failure("Error listing parts", e);
+    }
+  }
+
+  /**
+   * Complete the upload
+   * POST /api/files/multipart/{uploadId}/complete?path=xxx
+   */
+  @Operation(
+      summary = "Complete a resumable upload",
+      description = "Assemble the parts into the final object, in part number order. The body lists the parts " +
+          "to use with their etags, as in S3 CompleteMultipartUpload; without it, every uploaded part is used " +
+          "and they must be numbered 1..N without gaps."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Upload completed"),
+      @ApiResponse(responseCode = "400", description = "A part is missing, has another etag or is too small"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found")
+  })
+  @PostMapping("/{uploadId}/complete")
+  @Bulkhead(Workload.UPLOAD)
+  public ResponseEntity<Object> complete(
+      @PathVariable("uploadId") String uploadId,
+      @RequestParam("path") String filePath,
+
+      @Parameter(description = "Parts to assemble: partNumber and etag of each")
+      @RequestBody(required = false) List<UploadedPart> parts
+  ) {
+    try {
+      Response response = service.complete(filePath, uploadId, parts);
+      return ResponseEntity.ok(response);
+    } catch (RuntimeException e) {
+      return failure("Error completing upload", e);
+    }
+  }
+
+  /**
+   * Abort the upload
+   * DELETE /api/files/multipart/{uploadId}?path=xxx
+   */
+  @Operation(
+      summary = "Abort a resumable upload",
+      description = "Abort the session and discard every part uploaded so far."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Upload aborted"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found")
+  })
+  @DeleteMapping("/{uploadId}")
+  @Bulkhead(Workload.METADATA)
+  public ResponseEntity<Object> abort(
+      @PathVariable("uploadId") String uploadId,
+      @RequestParam("path") String filePath
+  ) {
+    try {
+      service.abort(filePath, uploadId);
+
+      Map<String, String> res = new HashMap<>();
+      res.put("message", "Upload aborted");
+      res.put("uploadId", uploadId);
+      res.put("fileName", filePath);
+      return ResponseEntity.ok(res);
+    } catch (RuntimeException e) {
+      return failure("Error aborting upload", e);
+    }
+  }
+
+  private ResponseEntity<Object> failure(String message, RuntimeException e) {
+    if (e instanceof IllegalArgumentException) {
+      throw e;
+    }
+    // Answered with 503 by the exception handler while the MinIO circuit breaker is open
+    StorageUnavailableException unavailable = StorageUnavailableException.find(e);
+    if (unavailable != null) {
+      throw unavailable;
+    }
+
+    Map<String, String> res = new HashMap<>();
+    if (e.getCause() instanceof ErrorResponseException ere && ere.errorResponse() != null) {
+      String code = ere.errorResponse().code();
+      if ("NoSuchUpload".equals(code)) {
+        res.put("message", "Upload session not found");
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(res);
+      }
+      if (CLIENT_ERRORS.contains(code)) {
+        res.put("message", message + ": " + ere.errorResponse().message());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(res);
+      }
+    }
+
+    log.error("{}: {}", message, e.getMessage());
+    res.put("message", message + ": " + e.getMessage());
+    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
+  }
+}
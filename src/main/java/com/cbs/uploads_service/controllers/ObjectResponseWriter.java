@@ -0,0 +1,398 @@
+package com.cbs.uploads_service.controllers;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.services.MinioService;
+import com.cbs.uploads_service.services.ObjectCompression;
+import com.cbs.uploads_service.services.ObjectContent;
+import com.cbs.uploads_service.utils.Streams;
+import io.minio.StatObjectResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Builds streamed object responses for the read endpoints, including
+ * Range / If-Range handling. Overlapping and adjacent ranges are merged and every
+ * remaining byte window maps onto a ranged GetObject call, so MinIO only sends the
+ * bytes the client asked for; ranges adding up to the whole object get it in one
+ * 200 instead. A plain
+ * GET is served from a single GetObject; ranged requests use the cached stat.
+ * Responses are built on the futures of {@link MinioService}, so no request thread
+ * waits for MinIO while async mode is on.
+ * <p>
+ * Responses carry ETag, Last-Modified and a Cache-Control policy chosen by key pattern, and
+ * If-None-Match / If-Modified-Since are answered with 304 from the cached stat
+ * without fetching the body.
+ * <p>
+ * Objects stored compressed are sent as stored, with their codec as Content-Encoding,
+ * to clients whose Accept-Encoding allows it, and decompressed while streaming for
+ * the others, under a weak ETag since those bytes differ. They are always sent whole.
+ */
+@Slf4j
+@Component
+public class ObjectResponseWriter {
+
+  private static final String BYTES = "bytes";
+
+  private final MinioService service;
+  private final String defaultCachePolicy;
+  private final Map<Pattern, String> cachePolicies = new LinkedHashMap<>();
+
+  public ObjectResponseWriter(MinioService service, UploadProperties uploadProperties) {
+    this.service = service;
+    this.defaultCachePolicy = uploadProperties.getCacheControl().getDefaultPolicy();
+    for (UploadProperties.CacheControl.Rule rule : uploadProperties.getCacheControl().getRules()) {
+      cachePolicies.put(Pattern.compile(rule.getPattern()), rule.getPolicy());
+    }
+  }
+
+  /**
+   * Builds the response without blocking on MinIO when {@code uploads.async.enabled}
+   * is set: the future completes once the stat or the object's response headers are in.
+   */
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> write(
+      String filePath,
+      HttpHeaders requestHeaders,
+      Consumer<HttpHeaders> disposition
+  ) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.ACCEPT_RANGES, BYTES);
+    disposition.accept(headers);
+
+    if (!isConditional(requestHeaders) && !requestHeaders.containsKey(HttpHeaders.RANGE)) {
+      // Plain GET: the object's own response headers describe it, no separate stat needed
+      return service.openStoredAsync(filePath)
+          .thenApply(content -> fullBody(content, filePath, requestHeaders, headers));
+    }
+
+    return service.getFileInfoAsync(filePath).thenCompose(stat -> {
+      CompletableFuture<ResponseEntity<StreamingResponseBody>> response =
+          respond(filePath, requestHeaders, headers, stat);
+      if (response != null) {
+        return response;
+      }
+      return service.openStoredAsync(filePath)
+          .thenApply(content -> fullBody(content, filePath, requestHeaders, headers));
+    });
+  }
+
+  /**
+   * Answers a conditional or ranged request from the stat; null when the full object
+   * has to be sent.
+   */
+  private CompletableFuture<ResponseEntity<StreamingResponseBody>> respond(
+      String filePath,
+      HttpHeaders requestHeaders,
+      HttpHeaders headers,
+      StatObjectResponse stat
+  ) {
+    if (isConditional(requestHeaders) && notModified(requestHeaders, stat)) {
+      HttpHeaders notModified = new HttpHeaders();
+      String codec = ObjectCompression.codec(stat);
+      if (codec != null) {
+        notModified.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+      }
+      validators(notModified, filePath, stat, codec != null && !accepts(requestHeaders, codec));
+      return CompletableFuture.completedFuture(
+          ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(notModified).build());
+    }
+
+    List<HttpRange> ranges;
+    try {
+      ranges = requestHeaders.getRange();
+    } catch (IllegalArgumentException e) {
+      // An invalid Range header is ignored, not refused (RFC 9110 14.2)
+      log.debug("Ignoring invalid range for {}: {}", filePath, e.getMessage());
+      return null;
+    }
+
+    if (ranges.isEmpty() || ObjectCompression.codec(stat) != null) {
+      // Ranges of the content do not map onto compressed bytes, those are sent whole
+      return null;
+    }
+
+    long size = stat.size();
+    MediaType contentType = MediaType.parseMediaType(stat.contentType());
+    validators(headers, filePath, stat, false);
+
+    try {
+      ranges = rangesToServe(requestHeaders, ranges, stat);
+    } catch (IllegalArgumentException e) {
+      // Neither an entity tag nor a date: the validator cannot match (RFC 9110 13.1.5)
+      log.debug("Ignoring range with invalid If-Range for {}: {}", filePath, e.getMessage());
+      return null;
+    }
+
+    if (ranges.isEmpty()) {
+      return null;
+    }
+
+    for (HttpRange range : ranges) {
+      if (size == 0 || range.getRangeStart(size) >= size) {
+        return CompletableFuture.completedFuture(notSatisfiable(headers, size));
+      }
+    }
+
+    ranges = coalesce(ranges, size);
+    if (ranges.isEmpty()) {
+      // Asking for at least as many bytes as the object has: one GetObject of all of it is cheaper
+      return null;
+    }
+
+    if (ranges.size() == 1) {
+      HttpRange range = ranges.get(0);
+      long start = range.getRangeStart(size);
+      long end = range.getRangeEnd(size);
+
+      headers.setContentType(contentType);
+      headers.setContentLength(end - start + 1);
+      headers.set(HttpHeaders.CONTENT_RANGE, contentRange(start, end, size));
+      // Opened before the 206 is committed, so a failed GetObject still gets a status of its own
+      return service.downloadFileAsync(filePath, start, end - start + 1)
+          .thenApply(in -> new ResponseEntity<>(streamBody(in, filePath), headers, HttpStatus.PARTIAL_CONTENT));
+    }
+
+    String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+    headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+    return CompletableFuture.completedFuture(new ResponseEntity<>(
+        multipartBody(filePath, ranges, size, contentType, boundary), headers, HttpStatus.PARTIAL_CONTENT));
+  }
+
+  private ResponseEntity<StreamingResponseBody> fullBody(
+      ObjectContent content,
+      String filePath,
+      HttpHeaders requestHeaders,
+      HttpHeaders headers
+  ) {
+    StatObjectResponse stat = content.stat();
+    String codec = ObjectCompression.codec(stat);
+    headers.setContentType(MediaType.parseMediaType(stat.contentType()));
+    if (codec == null) {
+      validators(headers, filePath, stat, false);
+      headers.setContentLength(stat.size());
+      return new ResponseEntity<>(streamBody(content, filePath), headers, HttpStatus.OK);
+    }
+
+    headers.set(HttpHeaders.ACCEPT_RANGES, "none");
+    headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+    if (accepts(requestHeaders, codec)) {
+      validators(headers, filePath, stat, false);
+      headers.set(HttpHeaders.CONTENT_ENCODING, codec);
+      headers.setContentLength(stat.size());
+      return new ResponseEntity<>(streamBody(content, filePath), headers, HttpStatus.OK);
+    }
+
+    // The decompressed length is not known up front, so the body is sent chunked
+    validators(headers, filePath, stat, true);
+    return new ResponseEntity<>(decodedBody(content, codec, filePath), headers, HttpStatus.OK);
+  }
+
+  /**
+   * Returns the ranges to honour, or an empty list when the full object should be sent
+   * because an If-Range validator no longer matches.
+   */
+  private List<HttpRange> rangesToServe(HttpHeaders requestHeaders, List<HttpRange> ranges, StatObjectResponse stat) {
+    String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+    if (ifRange == null || ifRange.isBlank()) {
+      return ranges;
+    }
+
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // Only strong validators may be used with If-Range
+      return ifRange.equals(quote(stat.etag())) ? ranges : List.of();
+    }
+
+    long ifRangeDate = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+    ZonedDateTime lastModified = stat.lastModified();
+    if (ifRangeDate == -1 || lastModified == null) {
+      return List.of();
+    }
+    return lastModified.toInstant().getEpochSecond() == ifRangeDate / 1000 ? ranges : List.of();
+  }
+
+  /**
+   * Merges overlapping and adjacent ranges, in offset order (RFC 9110 14.6), so every
+   * part of the response costs one GetObject. Returns an empty list when the ranges ask
+   * for at least the size of the object, as {@link HttpRange#toResourceRegions} refuses
+   * to serve.
+   */
+  static List<HttpRange> coalesce(List<HttpRange> ranges, long size) {
+    long requested = 0;
+    List<long[]> windows = new ArrayList<>();
+    for (HttpRange range : ranges) {
+      long start = range.getRangeStart(size);
+      long end = range.getRangeEnd(size);
+      requested += end - start + 1;
+      windows.add(new long[]{start, end});
+    }
+    if (requested >= size) {
+      return List.of();
+    }
+
+    windows.sort(Comparator.comparingLong(window -> window[0]));
+    List<HttpRange> merged = new ArrayList<>();
+    long[] current = windows.get(0);
+    for (long[] window : windows.subList(1, windows.size())) {
+      if (window[0] <= current[1] + 1) {
+        current[1] = Math.max(current[1], window[1]);
+      } else {
+        merged.add(HttpRange.createByteRange(current[0], current[1]));
+        current = window;
+      }
+    }
+    merged.add(HttpRange.createByteRange(current[0], current[1]));
+    return merged;
+  }
+
+  private static boolean isConditional(HttpHeaders requestHeaders) {
+    return requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)
+        || requestHeaders.containsKey(HttpHeaders.IF_MODIFIED_SINCE);
+  }
+
+  /**
+   * If-None-Match takes precedence; If-Modified-Since is only evaluated without it (RFC 9110 13.1.3).
+   */
+  private static boolean notModified(HttpHeaders requestHeaders, StatObjectResponse stat) {
+    List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+    if (!ifNoneMatch.isEmpty()) {
+      String etag = quote(stat.etag());
+      for (String candidate : ifNoneMatch) {
+        if ("*".equals(candidate) || weak(candidate).equals(etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long ifModifiedSince = requestHeaders.getIfModifiedSince();
+    ZonedDateTime lastModified = stat.lastModified();
+    if (ifModifiedSince == -1 || lastModified == null) {
+      return false;
+    }
+    return lastModified.toInstant().getEpochSecond() <= ifModifiedSince / 1000;
+  }
+
+  private static boolean accepts(HttpHeaders requestHeaders, String codec) {
+    return ObjectCompression.accepts(requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING), codec);
+  }
+
+  /**
+   * ETag, Last-Modified and Cache-Control, sent on 200, 206 and 304 responses alike.
+   * A {@code weak} ETag marks content decompressed from the stored bytes.
+   */
+  private void validators(HttpHeaders headers, String filePath, StatObjectResponse stat, boolean weak) {
+    if (stat.etag() != null) {
+      headers.setETag(weak ? "W/" + quote(stat.etag()) : quote(stat.etag()));
+    }
+    if (stat.lastModified() != null) {
+      headers.setLastModified(stat.lastModified());
+    }
+    headers.setCacheControl(cachePolicy(filePath));
+  }
+
+  String cachePolicy(String filePath) {
+    for (Map.Entry<Pattern, String> policy : cachePolicies.entrySet()) {
+      if (policy.getKey().matcher(filePath).lookingAt()) {
+        return policy.getValue();
+      }
+    }
+    return defaultCachePolicy;
+  }
+
+  private StreamingResponseBody streamBody(InputStream stream, String filePath) {
+    return out -> {
+      try (InputStream in = stream) {
+        Streams.copy(in, out);
+      } catch (IOException e) {
+        log.warn("Streaming of {} aborted: {}", filePath, e.getMessage());
+      }
+    };
+  }
+
+  private StreamingResponseBody decodedBody(ObjectContent content, String codec, String filePath) {
+    return out -> {
+      try (InputStream stored = content; InputStream in = ObjectCompression.decode(stored, codec)) {
+        Streams.copy(in, out);
+      } catch (IOException e) {
+        log.warn("Streaming of {} aborted: {}", filePath, e.getMessage());
+      }
+    };
+  }
+
+  /**
+   * Writes a multipart/byteranges body, fetching each part from MinIO only when it is reached.
+   */
+  private StreamingResponseBody multipartBody(
+      String filePath,
+      List<HttpRange> ranges,
+      long size,
+      MediaType contentType,
+      String boundary
+  ) {
+    return out -> {
+      try {
+        for (HttpRange range : ranges) {
+          long start = range.getRangeStart(size);
+          long end = range.getRangeEnd(size);
+
+          writeAscii(out, "\r\n--" + boundary + "\r\n");
+          writeAscii(out, HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n");
+          writeAscii(out, HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, size) + "\r\n\r\n");
+
+          try (InputStream in = service.downloadFile(filePath, start, end - start + 1)) {
+            Streams.copy(in, out);
+          }
+        }
+        writeAscii(out, "\r\n--" + boundary + "--\r\n");
+        out.flush();
+      } catch (IOException e) {
+        log.warn("Streaming of {} aborted: {}", filePath, e.getMessage());
+      }
+    };
+  }
+
+  private ResponseEntity<StreamingResponseBody> notSatisfiable(HttpHeaders headers, long size) {
+    headers.set(HttpHeaders.CONTENT_RANGE, BYTES + " */" + size);
+    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+  }
+
+  private static String contentRange(long start, long end, long size) {
+    return BYTES + " " + start + "-" + end + "/" + size;
+  }
+
+  private static String quote(String etag) {
+    if (etag == null) {
+      return null;
+    }
+    return etag.startsWith("\"") ? etag : "\"" + etag + "\"";
+  }
+
+  private static String weak(String etag) {
+    return etag.startsWith("W/") ? etag.substring(2) : etag;
+  }
+
+  private static void writeAscii(OutputStream out, String value) throws IOException {
+    out.write(value.getBytes(StandardCharsets.US_ASCII));
+  }
+}
@@ -1,8 +1,20 @@
 package com.cbs.uploads_service.controllers;
 
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.BulkDeleteRequest;
+import com.cbs.uploads_service.dto.DeleteResult;
 import com.cbs.uploads_service.dto.FileInfo;
+import com.cbs.uploads_service.dto.FileListPage;
+import com.cbs.uploads_service.dto.FileSearchCriteria;
 import com.cbs.uploads_service.response.Response;
+import com.cbs.uploads_service.services.Bulkheads.Workload;
+import com.cbs.uploads_service.services.ImageDerivatives;
 import com.cbs.uploads_service.services.MinioService;
+import com.cbs.uploads_service.services.ObjectArchiver;
+import com.cbs.uploads_service.services.StorageUnavailableException;
+import com.cbs.uploads_service.services.UploadTooLargeException;
+import com.cbs.uploads_service.utils.Futures;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.minio.StatObjectResponse;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -11,22 +23,32 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
 @Slf4j
 @RestController
@@ -36,7 +58,15 @@ import java.util.Map;
 @Tag(name = "Upload file API", description = "APIs for managing file")
 public class UploadController {
 
+  private static final String NDJSON_VALUE = "application/x-ndjson";
+  private static final int NDJSON_FLUSH_EVERY = 100;
+
   private final MinioService service;
+  private final ObjectResponseWriter responseWriter;
+  private final ObjectArchiver archiver;
+  private final ImageDerivatives derivatives;
+  private final ObjectMapper objectMapper;
+  private final UploadProperties uploadProperties;
 
   /**
    * Upload single file
@@ -59,6 +89,7 @@ public class UploadController {
           responseCode = "500", description = "Internal Server Error"
       )
   })
+  @Bulkhead(Workload.UPLOAD)
   public ResponseEntity<Response> uploadFile(
       @Parameter(description = "File to upload", required = true)
       @RequestParam("file") MultipartFile file,
@@ -85,7 +116,8 @@ public class UploadController {
   @PostMapping(value = "/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
   @Operation(
       summary = "Upload multiple files",
-      description = "Upload multiple files at once to MinIO storage. All files are organized in year/month subdirectories.",
+      description = "Upload multiple files at once to MinIO storage. All files are organized in year/month subdirectories. " +
+          "Files are uploaded in parallel; each entry of the result reports its own success or failure, in request order.",
       tags = "Upload file API"
   )
   @ApiResponses(value = {
@@ -98,6 +130,7 @@ public class UploadController {
       @ApiResponse(responseCode = "500", description = "Internal server error")
   })
 
+  @Bulkhead(Workload.UPLOAD)
   public ResponseEntity<List<Response>> uploadFiles(
       @Parameter(description = "Files to upload", required = true)
       @RequestParam("files") MultipartFile[] files,
@@ -113,6 +146,56 @@ public class UploadController {
     return ResponseEntity.ok(res);
   }
 
+  /**
+   * Upload a file from the raw request body
+   * PUT /api/files/stream?fileName=xxx
+   */
+  @PutMapping("/stream")
+  @Operation(
+      summary = "Stream upload a single file",
+      description = "Upload the raw request body as a file. This is the streaming upload: the body is piped " +
+          "straight to MinIO without temp-file spooling, so instead of the multipart size limit " +
+          "uploads.streaming.max-size applies; " +
+          "multipart/form-data bodies are always spooled by the container, so send one file per request " +
+          "here instead of POSTing a form. The Content-Type header is " +
+          "stored as the object content type. With deduplication enabled, an X-Content-SHA256 header " +
+          "matching stored content makes the upload complete without reading the body; send it with " +
+          "'Expect: 100-continue' so the body is not transferred either.",
+      tags = "Upload file API"
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "File uploaded successfully",
+          content = @Content(
+              schema = @Schema(implementation = Response.class),
+              mediaType = MediaType.APPLICATION_JSON_VALUE
+          )),
+      @ApiResponse(responseCode = "400", description = "Content does not match X-Content-SHA256"),
+      @ApiResponse(responseCode = "413", description = "Body larger than uploads.streaming.max-size"),
+      @ApiResponse(responseCode = "500", description = "Internal server error")
+  })
+  @Bulkhead(Workload.UPLOAD)
+  public ResponseEntity<Response> uploadStream(
+      @Parameter(description = "Original file name", required = true)
+      @RequestParam("fileName") String fileName,
+
+      @Parameter(description = "Optional dir path")
+      @RequestParam(value = "dir", required = false) String dir,
+
+      @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+
+      @Parameter(description = "Hex SHA-256 of the body, to skip uploading content that is already stored")
+      @RequestHeader(value = "X-Content-SHA256", required = false) String sha256,
+      HttpServletRequest request
+  ) throws IOException {
+    long maxSize = uploadProperties.getStreaming().getMaxSize().toBytes();
+    if (request.getContentLengthLong() > maxSize) {
+      throw new UploadTooLargeException(maxSize);
+    }
+    Response response = service.uploadStream(UploadTooLargeException.limit(request.getInputStream(), maxSize),
+        request.getContentLengthLong(), fileName, contentType, dir, sha256);
+    return ResponseEntity.ok(response);
+  }
+
   /**
    * Download file
    * GET /api/files/download/{fileName}
@@ -124,32 +207,28 @@ public class UploadController {
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200", description = "File downloaded successfully",
           content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE)),
-      @ApiResponse(responseCode = "404", description = "File not found")
+      @ApiResponse(responseCode = "206", description = "Requested byte range(s) downloaded"),
+      @ApiResponse(responseCode = "304", description = "Not modified since the cached copy"),
+      @ApiResponse(responseCode = "404", description = "File not found"),
+      @ApiResponse(responseCode = "416", description = "Requested range not satisfiable"),
+      @ApiResponse(responseCode = "503", description = "Storage unavailable, retry later")
   })
   @GetMapping("/download/**")
-  public ResponseEntity<byte[]> downloadFile(
-      @RequestParam("path") String filePath
+  @Bulkhead(Workload.DOWNLOAD)
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> downloadFile(
+      @RequestParam("path") String filePath,
+      @RequestHeader HttpHeaders requestHeaders
   ) {
-    try {
-      StatObjectResponse stat = service.getFileInfo(filePath);
-      InputStream stream = service.downloadFile(filePath);
-      byte[] content = IOUtils.toByteArray(stream);
-      stream.close();
-
-      String fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
-      String encodedFilename = URLEncoder.encode(fileName, StandardCharsets.UTF_8);
-
-      HttpHeaders headers = new HttpHeaders();
-      headers.setContentType(MediaType.parseMediaType(stat.contentType()));
-      headers.setContentLength(stat.size());
-      headers.setContentDispositionFormData("attachment", encodedFilename);
-
-      return new ResponseEntity<>(content, headers, HttpStatus.OK);
-
-    } catch (Exception e) {
-      log.error("Error downloading file: {}", e.getMessage());
-      return ResponseEntity.notFound().build();
-    }
+    String fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
+    String encodedFilename = URLEncoder.encode(fileName, StandardCharsets.UTF_8);
+
+    return responseWriter.write(filePath, requestHeaders,
+            headers -> headers.setContentDispositionFormData("attachment", encodedFilename))
+        .exceptionally(e -> {
+          rethrowIfUnavailable(e);
+          log.error("Error downloading file: {}", Futures.cause(e).getMessage());
+          return ResponseEntity.notFound().build();
+        });
   }
 
 
@@ -163,28 +242,82 @@ public class UploadController {
   )
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200", description = "File retrieved successfully"),
-      @ApiResponse(responseCode = "404", description = "File not found")
+      @ApiResponse(responseCode = "206", description = "Requested byte range(s) retrieved"),
+      @ApiResponse(responseCode = "304", description = "Not modified since the cached copy"),
+      @ApiResponse(responseCode = "404", description = "File not found"),
+      @ApiResponse(responseCode = "416", description = "Requested range not satisfiable"),
+      @ApiResponse(responseCode = "503", description = "Storage unavailable, retry later")
   })
   @GetMapping("/view")
-  public ResponseEntity<byte[]> viewFile(@RequestParam("path") String filePath) {
-    try {
-      StatObjectResponse stat = service.getFileInfo(filePath);
-      InputStream stream = service.downloadFile(filePath);
-      byte[] content = IOUtils.toByteArray(stream);
-      stream.close();
-
+  @Bulkhead(Workload.DOWNLOAD)
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> viewFile(
+      @RequestParam("path") String filePath,
+      @RequestHeader HttpHeaders requestHeaders
+  ) {
+    return responseWriter.write(filePath, requestHeaders,
+            headers -> headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline"))
+        .exceptionally(ex -> {
+          rethrowIfUnavailable(ex);
+          log.error("Error viewing file: {}", Futures.cause(ex).getMessage());
+          return ResponseEntity.notFound().build();
+        });
+  }
 
-      HttpHeaders headers = new HttpHeaders();
-      headers.setContentType(MediaType.parseMediaType(stat.contentType()));
-      headers.setContentLength(stat.size());
-      headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline");
+  /**
+   * View a resized image
+   * GET /api/files/derivative?path=xxx&w=200
+   */
+  @Operation(
+      summary = "View a resized image",
+      description = "Resize an image to fit within 'w' x 'h' (either may be omitted), keeping its aspect ratio. " +
+          "Derivatives are cached by the etag of the original, so a replaced image gets new ones."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Resized image retrieved"),
+      @ApiResponse(responseCode = "304", description = "Not modified since the cached copy"),
+      @ApiResponse(responseCode = "400", description = "Invalid parameters, or the file cannot be resized"),
+      @ApiResponse(responseCode = "404", description = "File not found"),
+      @ApiResponse(responseCode = "503", description = "Too many images being resized, retry later")
+  })
+  @GetMapping("/derivative")
+  @Bulkhead(Workload.DOWNLOAD)
+  public ResponseEntity<byte[]> viewDerivative(
+      @RequestParam("path") String filePath,
+      @RequestParam(value = "w", required = false) Integer width,
+      @RequestParam(value = "h", required = false) Integer height,
+
+      @Parameter(description = "jpeg or png; defaults to png for images with transparency, jpeg otherwise")
+      @RequestParam(value = "format", required = false) String format,
+
+      @Parameter(description = "JPEG quality, 1-100")
+      @RequestParam(value = "quality", required = false) Integer quality,
+      @RequestHeader HttpHeaders requestHeaders
+  ) {
+    ImageDerivatives.Spec spec = derivatives.spec(width, height, format, quality);
+    if (!service.fileExists(filePath)) {
+      return ResponseEntity.notFound().build();
+    }
 
-      return new ResponseEntity<>(content, headers, HttpStatus.OK);
+    StatObjectResponse source = service.getFileInfo(filePath);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag("\"" + derivatives.etag(source, spec) + "\"");
+    headers.setCacheControl(responseWriter.cachePolicy(filePath));
+    if (source.lastModified() != null) {
+      headers.setLastModified(source.lastModified());
+    }
+    if (requestHeaders.getIfNoneMatch().contains(headers.getETag())) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+    }
 
+    try {
+      ImageDerivatives.Derivative derivative = derivatives.get(filePath, source, spec);
+      headers.setContentType(derivative.contentType());
+      headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline");
+      return ResponseEntity.ok().headers(headers).body(derivative.body());
 
-    } catch (Exception ex) {
-      log.error("Error viewing file: {}", ex.getMessage());
-      return ResponseEntity.notFound().build();
+    } catch (RejectedExecutionException e) {
+      log.warn("Derivative of {} not rendered: {}", filePath, e.getMessage());
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
     }
   }
 
@@ -202,26 +335,121 @@ public class UploadController {
       @ApiResponse(responseCode = "500", description = "Internal server error")
   })
   @DeleteMapping("/delete")
-  public ResponseEntity<Map<String, String>> deleteFile(@RequestParam("path") String filePath) {
+  @Bulkhead(Workload.METADATA)
+  public CompletableFuture<ResponseEntity<Map<String, String>>> deleteFile(@RequestParam("path") String filePath) {
     Map<String, String> res = new HashMap<>();
 
-    try {
+    return service.fileExistsAsync(filePath)
+        .thenCompose(exists -> {
+          if (!exists) {
+            res.put("message", "File Not Found");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body(res));
+          }
+
+          return service.deleteFileAsync(filePath).thenApply(deleted -> {
+            res.put("message", "File Deleted successfully");
+            res.put("fileName", filePath);
+            return ResponseEntity.ok(res);
+          });
+        })
+        .exceptionally(ex -> {
+          Throwable e = Futures.cause(ex);
+          log.error("Error deleting file: {}", e.getMessage());
+          res.put("message", "Error deleting file: " + e.getMessage());
+          return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
+        });
+  }
+
+  /**
+   * Delete many files
+   * POST /api/files/delete/bulk
+   */
+  @Operation(
+      summary = "Delete many files",
+      description = "Delete the listed 'paths', or every file under 'prefix', in batches of up to 1000 keys. " +
+          "One result per key is streamed back as NDJSON. With 'dryRun' nothing is deleted."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Results streamed"),
+      @ApiResponse(responseCode = "400", description = "Neither or both of paths and prefix given")
+  })
+  @PostMapping(value = "/delete/bulk", produces = NDJSON_VALUE)
+  @Bulkhead(Workload.DELETE)
+  public ResponseEntity<StreamingResponseBody> deleteFiles(@RequestBody BulkDeleteRequest request) {
+    boolean hasPaths = request.getPaths() != null && !request.getPaths().isEmpty();
+    boolean hasPrefix = request.getPrefix() != null && !request.getPrefix().isBlank();
+    if (hasPaths == hasPrefix) {
+      throw new IllegalArgumentException("Give either a non-empty 'paths' list or a non-blank 'prefix'");
+    }
 
-      if (!service.fileExists(filePath)) {
-        res.put("message", "File Not Found");
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(res);
+    StreamingResponseBody body = out -> service.deleteFiles(request, results -> {
+      try {
+        for (DeleteResult result : results) {
+          out.write(objectMapper.writeValueAsBytes(result));
+          out.write('\n');
+        }
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
+    });
 
-      service.deleteFile(filePath);
-      res.put("message", "File Deleted successfully");
-      res.put("fileName", filePath);
-      return ResponseEntity.ok(res);
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+        .body(body);
+  }
 
-    } catch (Exception e) {
-      log.error("Error deleting file: {}", e.getMessage());
-      res.put("message", "Error deleting file: " + e.getMessage());
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
+  /**
+   * Download many files as one ZIP
+   * GET /api/files/archive?path=a&path=b or ?prefix=xxx
+   */
+  @Operation(
+      summary = "Download many files as a ZIP archive",
+      description = "Stream the listed 'path' files, or every file under 'prefix', as one ZIP archive built " +
+          "on the fly. Entries are named after their key, relative to 'prefix'. Repeated paths are archived " +
+          "once. Files that cannot be read are skipped and listed in an ERRORS.txt entry. At most " +
+          "uploads.archive.max-paths 'path' parameters are accepted."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Archive streamed",
+          content = @Content(mediaType = "application/zip")),
+      @ApiResponse(responseCode = "400", description = "Neither or both of path and prefix given, or too many paths")
+  })
+  @GetMapping("/archive")
+  @Bulkhead(Workload.DOWNLOAD)
+  public ResponseEntity<StreamingResponseBody> downloadArchive(
+      @RequestParam(value = "path", required = false) List<String> paths,
+      @RequestParam(value = "prefix", required = false) String prefix,
+
+      @Parameter(description = "File name of the archive")
+      @RequestParam(value = "name", defaultValue = "archive.zip") String name
+  ) {
+    boolean hasPaths = paths != null && !paths.isEmpty();
+    boolean hasPrefix = prefix != null && !prefix.isBlank();
+    if (hasPaths == hasPrefix) {
+      throw new IllegalArgumentException("Give either one or more 'path' parameters or a non-blank 'prefix'");
+    }
+    int maxPaths = uploadProperties.getArchive().getMaxPaths();
+    if (hasPaths && paths.size() > maxPaths) {
+      throw new IllegalArgumentException("At most " + maxPaths + " 'path' parameters are allowed; use 'prefix'");
     }
+
+    StreamingResponseBody body = out -> {
+      if (hasPaths) {
+        archiver.write(new LinkedHashSet<>(paths).iterator(), null, out);
+        return;
+      }
+      try (Stream<FileInfo> files = service.streamFiles(prefix, false)) {
+        archiver.write(files.map(FileInfo::getFileName).iterator(), prefix, out);
+      }
+    };
+
+    String fileName = name.endsWith(".zip") ? name : name + ".zip";
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType("application/zip"))
+        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+            .filename(fileName, StandardCharsets.UTF_8).build().toString())
+        .body(body);
   }
 
   /**
@@ -237,12 +465,137 @@ public class UploadController {
       @ApiResponse(responseCode = "500", description = "Internal server error")
   })
   @GetMapping("/files")
-  public ResponseEntity<List<FileInfo>> listFiles(@RequestParam(value = "prefix", required = false) String prefix) {
-    List<FileInfo> files = service.listFiles(prefix);
+  @Bulkhead(Workload.LIST)
+  public ResponseEntity<List<FileInfo>> listFiles(
+      @RequestParam(value = "prefix", required = false) String prefix,
+
+      @Parameter(description = "Include a presigned URL for every file (set false for faster listings)")
+      @RequestParam(value = "urls", defaultValue = "true") boolean includeUrls
+  ) {
+    List<FileInfo> files = service.listFiles(prefix, includeUrls);
 
     return ResponseEntity.ok(files);
   }
 
+  /**
+   * Stream all files as NDJSON
+   * GET /api/files/list (Accept: application/x-ndjson)
+   */
+  @Operation(
+      summary = "Stream all files as NDJSON",
+      description = "Same listing as /files, written one JSON object per line as MinIO returns the keys. " +
+          "Select it with 'Accept: application/x-ndjson'."
+  )
+  @ApiResponse(responseCode = "200", description = "Files streamed successfully")
+  @GetMapping(value = "/files", produces = NDJSON_VALUE)
+  @Bulkhead(Workload.LIST)
+  public ResponseEntity<StreamingResponseBody> streamFiles(
+      @RequestParam(value = "prefix", required = false) String prefix,
+
+      @Parameter(description = "Include a presigned URL for every file (set false for faster listings)")
+      @RequestParam(value = "urls", defaultValue = "true") boolean includeUrls
+  ) {
+    StreamingResponseBody body = out -> {
+      try (Stream<FileInfo> files = service.streamFiles(prefix, includeUrls)) {
+        int written = 0;
+        for (Iterator<FileInfo> it = files.iterator(); it.hasNext(); ) {
+          out.write(objectMapper.writeValueAsBytes(it.next()));
+          out.write('\n');
+          // Flush the first line right away, then in batches
+          if (++written % NDJSON_FLUSH_EVERY == 1) {
+            out.flush();
+          }
+        }
+        out.flush();
+      }
+    };
+
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+        .body(body);
+  }
+
+  /**
+   * List one page of files
+   * GET /api/files/list/page?maxKeys=100&startAfter=xxx
+   */
+  @Operation(
+      summary = "List files page by page",
+      description = "List at most 'maxKeys' files (1-1000) in key order. Pass the returned 'nextStartAfter' " +
+          "as 'startAfter' to get the next page."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Page listed successfully"),
+      @ApiResponse(responseCode = "400", description = "Invalid maxKeys"),
+      @ApiResponse(responseCode = "500", description = "Internal server error")
+  })
+  @GetMapping("/files/page")
+  @Bulkhead(Workload.LIST)
+  public ResponseEntity<FileListPage> listFilesPage(
+      @RequestParam(value = "prefix", required = false) String prefix,
+
+      @Parameter(description = "Continuation key returned as 'nextStartAfter' by the previous page")
+      @RequestParam(value = "startAfter", required = false) String startAfter,
+
+      @Parameter(description = "Page size (1-1000)")
+      @RequestParam(value = "maxKeys", defaultValue = "100") int maxKeys,
+
+      @Parameter(description = "Include a presigned URL for every file")
+      @RequestParam(value = "urls", defaultValue = "true") boolean includeUrls
+  ) {
+    return ResponseEntity.ok(service.listFilesPage(prefix, startAfter, maxKeys, includeUrls));
+  }
+
+  /**
+   * Search files by metadata
+   * GET /api/files/search?contentType=image/*&minSize=1024
+   */
+  @Operation(
+      summary = "Search files",
+      description = "Search the in-memory metadata index by prefix, content type (wildcards like image/* allowed), " +
+          "size range and last-modified range. Dates are ISO-8601, e.g. 2026-01-31T00:00:00Z. Objects written " +
+          "around this service, such as presigned uploads, are found after the next index rescan."
+  )
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Search completed"),
+      @ApiResponse(responseCode = "400", description = "Invalid search parameters"),
+      @ApiResponse(responseCode = "503", description = "Metadata index is still being built")
+  })
+  @GetMapping("/search")
+  @Bulkhead(Workload.LIST)
+  public ResponseEntity<List<FileInfo>> searchFiles(
+      @RequestParam(value = "prefix", required = false) String prefix,
+      @RequestParam(value = "contentType", required = false) String contentType,
+      @RequestParam(value = "minSize", required = false) Long minSize,
+      @RequestParam(value = "maxSize", required = false) Long maxSize,
+      @RequestParam(value = "modifiedAfter", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime modifiedAfter,
+      @RequestParam(value = "modifiedBefore", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime modifiedBefore,
+
+      @Parameter(description = "Maximum number of results (1-1000)")
+      @RequestParam(value = "limit", defaultValue = "100") int limit,
+
+      @Parameter(description = "Include a presigned URL for every file")
+      @RequestParam(value = "urls", defaultValue = "false") boolean includeUrls
+  ) {
+    FileSearchCriteria criteria = FileSearchCriteria.builder()
+        .prefix(prefix)
+        .contentType(contentType)
+        .minSize(minSize)
+        .maxSize(maxSize)
+        .modifiedAfter(modifiedAfter)
+        .modifiedBefore(modifiedBefore)
+        .limit(limit)
+        .build();
+
+    try {
+      return ResponseEntity.ok(service.searchFiles(criteria, includeUrls));
+    } catch (IllegalStateException e) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+  }
+
   /**
    * Get file info/metadata
    * GET /api/files/info?path=xxx
@@ -253,29 +606,34 @@ public class UploadController {
   )
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200", description = "File info retrieved successfully"),
-      @ApiResponse(responseCode = "404", description = "File not found")
+      @ApiResponse(responseCode = "404", description = "File not found"),
+      @ApiResponse(responseCode = "503", description = "Storage unavailable, retry later")
   })
   @GetMapping("/file/info")
-  public ResponseEntity<Map<String, Object>> getFileInfo(
+  @Bulkhead(Workload.METADATA)
+  public CompletableFuture<ResponseEntity<Map<String, Object>>> getFileInfo(
       @RequestParam("path") String filePath
   ) {
-    try {
-      StatObjectResponse stat = service.getFileInfo(filePath);
-      String url = service.getPresignedUrl(filePath);
-
-      Map<String, Object> info = new HashMap<>();
-      info.put("fileName", filePath);
-      info.put("size", stat.size());
-      info.put("contentType", stat.contentType());
-      info.put("lastModified", stat.lastModified());
-      info.put("etag", stat.etag());
-      info.put("url", url);
-
-      return ResponseEntity.ok(info);
-    } catch (Exception e) {
-      log.error("Error getting file info: {}", e.getMessage());
-      return ResponseEntity.notFound().build();
-    }
+    return service.getFileInfoAsync(filePath)
+        .thenApply(stat -> {
+          // Signed from the stat cached by the lookup above
+          String url = service.getPresignedUrl(filePath);
+
+          Map<String, Object> info = new HashMap<>();
+          info.put("fileName", filePath);
+          info.put("size", stat.size());
+          info.put("contentType", stat.contentType());
+          info.put("lastModified", stat.lastModified());
+          info.put("etag", stat.etag());
+          info.put("url", url);
+
+          return ResponseEntity.ok(info);
+        })
+        .exceptionally(e -> {
+          rethrowIfUnavailable(e);
+          log.error("Error getting file info: {}", Futures.cause(e).getMessage());
+          return ResponseEntity.notFound().build();
+        });
   }
 
   /**
@@ -292,26 +650,30 @@ public class UploadController {
       @ApiResponse(responseCode = "500", description = "Internal server error")
   })
   @GetMapping("/presigned-url")
-  public ResponseEntity<Map<String, String>> getPresignedUrl(
+  @Bulkhead(Workload.METADATA)
+  public CompletableFuture<ResponseEntity<Map<String, String>>> getPresignedUrl(
       @RequestParam("path") String filePath
   ) {
     Map<String, String> res = new HashMap<>();
 
-    try {
-      if (!service.fileExists(filePath)) {
-        res.put("message", "File Not Found");
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(res);
-      }
-
-      String url = service.getPresignedUrl(filePath);
-      res.put("url", url);
-      res.put("fileName", filePath);
-      return ResponseEntity.ok(res);
-    } catch (Exception e) {
-      log.error("Error generating presigned URL: {}", e.getMessage());
-      res.put("message", "Error generating URL: " + e.getMessage());
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
-    }
+    return service.fileExistsAsync(filePath)
+        .thenApply(exists -> {
+          if (!exists) {
+            res.put("message", "File Not Found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(res);
+          }
+
+          String url = service.getPresignedUrl(filePath);
+          res.put("url", url);
+          res.put("fileName", filePath);
+          return ResponseEntity.ok(res);
+        })
+        .exceptionally(ex -> {
+          Throwable e = Futures.cause(ex);
+          log.error("Error generating presigned URL: {}", e.getMessage());
+          res.put("message", "Error generating URL: " + e.getMessage());
+          return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
+        });
   }
 
   /**
@@ -328,6 +690,7 @@ public class UploadController {
       @ApiResponse(responseCode = "500", description = "Internal server error")
   })
   @PostMapping("/presigned-upload")
+  @Bulkhead(Workload.METADATA)
   public ResponseEntity<Map<String, String>> getPresignedUploadUrl(
       @RequestParam("fileName") String fileName,
       @RequestParam(value = "dir", required = false) String dir) {
@@ -335,12 +698,7 @@ public class UploadController {
     Map<String, String> response = new HashMap<>();
 
     try {
-      String fullPath = fileName;
-      if (dir != null && !dir.isEmpty()) {
-        dir = dir.replaceAll("^/+|/+$", "");
-        fullPath = dir + "/" + fileName;
-      }
-
+      String fullPath = service.objectKey(fileName, dir);
       String url = service.getPresignedUploadUrl(fullPath);
       response.put("uploadUrl", url);
       response.put("fileName", fullPath);
@@ -371,4 +729,15 @@ public class UploadController {
     return ResponseEntity.ok(response);
   }
 
+  /**
+   * A failure while the MinIO circuit breaker is open says nothing about the file, so
+   * it is answered with 503 rather than 404.
+   */
+  private static void rethrowIfUnavailable(Throwable ex) {
+    StorageUnavailableException unavailable = StorageUnavailableException.find(ex);
+    if (unavailable != null) {
+      throw unavailable;
+    }
+  }
+
 }
@@ -0,0 +1,29 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class BulkDeleteRequest implements Serializable {
+
+  /**
+   * Keys to delete; mutually exclusive with {@link #prefix}.
+   */
+  private List<String> paths;
+
+  /**
+   * Delete every object under this prefix.
+   */
+  private String prefix;
+
+  /**
+   * Only report the keys that would be deleted.
+   */
+  private boolean dryRun;
+}
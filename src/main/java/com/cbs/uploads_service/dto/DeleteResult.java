@@ -0,0 +1,22 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class DeleteResult implements Serializable {
+
+  private String fileName;
+  private boolean deleted;
+  private boolean dryRun;
+
+  /**
+   * MinIO error code and message when the key could not be deleted.
+   */
+  private String error;
+}
@@ -0,0 +1,22 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class FileListPage implements Serializable {
+
+  private List<FileInfo> files;
+
+  /**
+   * Pass as {@code startAfter} to fetch the next page; null on the last page.
+   */
+  private String nextStartAfter;
+  private boolean truncated;
+}
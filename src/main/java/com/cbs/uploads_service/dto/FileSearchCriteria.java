@@ -0,0 +1,26 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class FileSearchCriteria implements Serializable {
+
+  private String prefix;
+
+  /**
+   * Exact type or wildcard such as {@code image/*}.
+   */
+  private String contentType;
+  private Long minSize;
+  private Long maxSize;
+  private ZonedDateTime modifiedAfter;
+  private ZonedDateTime modifiedBefore;
+  private int limit;
+}
@@ -0,0 +1,35 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class IndexedObject implements Serializable {
+
+  private String fileName;
+  private long size;
+  private String contentType;
+  private ZonedDateTime lastModified;
+  private String etag;
+
+  /**
+   * SHA-256 of the content, known for deduplicated uploads only.
+   */
+  private String sha256;
+
+  /**
+   * Key of the blob holding the content when this object is a reference to it.
+   */
+  private String contentKey;
+
+  /**
+   * Codec the content is stored compressed with, null for raw content.
+   */
+  private String codec;
+}
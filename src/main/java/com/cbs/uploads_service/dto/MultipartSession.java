@@ -0,0 +1,19 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class MultipartSession implements Serializable {
+
+  private String uploadId;
+  private String fileName;
+  private String originalFileName;
+  private String contentType;
+  private long maxPartSize;
+}
@@ -0,0 +1,19 @@
+package com.cbs.uploads_service.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+@Data
+public class UploadedPart implements Serializable {
+
+  private int partNumber;
+  private String etag;
+  private long size;
+  private ZonedDateTime lastModified;
+}
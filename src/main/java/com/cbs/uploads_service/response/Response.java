@@ -18,4 +18,10 @@ public class Response implements Serializable {
   private long size;
   private String url;
   private String message;
+  private boolean success;
+
+  /**
+   * True when identical content was already stored and only a reference was written.
+   */
+  private boolean deduplicated;
 }
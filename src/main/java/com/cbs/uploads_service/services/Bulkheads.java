@@ -0,0 +1,102 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link ConcurrencyLimit} per kind of work, so a burst of large uploads cannot
+ * take the request threads and MinIO connections that cheap metadata calls need.
+ * Limits adapt to the latency of the MinIO calls of their kind, as reported by
+ * {@link StorageMetrics}, except the upload limit: a PutObject lasts as long as the
+ * client takes to send the body, so its latency says more about object size and client
+ * bandwidth than about MinIO. Published as {@code bulkhead.limit}, {@code bulkhead.active},
+ * {@code bulkhead.queued} and {@code bulkhead.rejected}, tagged by {@code workload}.
+ */
+@Component
+public class Bulkheads {
+
+  public enum Workload {
+    UPLOAD, DOWNLOAD, LIST, METADATA, DELETE
+  }
+
+  private final boolean enabled;
+  private final Map<Workload, ConcurrencyLimit> limits = new EnumMap<>(Workload.class);
+  private final Map<Workload, Counter> rejected = new EnumMap<>(Workload.class);
+
+  public Bulkheads(UploadProperties uploadProperties, MeterRegistry meterRegistry) {
+    UploadProperties.Bulkheads config = uploadProperties.getBulkheads();
+    this.enabled = config.isEnabled();
+
+    for (Workload workload : Workload.values()) {
+      UploadProperties.Bulkheads.Limit limit = switch (workload) {
+        case UPLOAD -> config.getUpload();
+        case DOWNLOAD -> config.getDownload();
+        case LIST -> config.getList();
+        case METADATA -> config.getMetadata();
+        case DELETE -> config.getDelete();
+      };
+      String name = workload.name().toLowerCase(Locale.ROOT);
+      ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(
+          name, limit.getMaxConcurrent() / 4, limit.getMaxConcurrent(), limit.getMaxQueue(),
+          limit.getQueueTimeout(), config.getRetryAfter(),
+          config.isAdaptive() && workload != Workload.UPLOAD, config.getLatencyTolerance());
+      limits.put(workload, concurrencyLimit);
+
+      Gauge.builder("bulkhead.limit", concurrencyLimit, ConcurrencyLimit::limit)
+          .description("Current concurrency limit")
+          .tag("workload", name)
+          .register(meterRegistry);
+      Gauge.builder("bulkhead.active", concurrencyLimit, ConcurrencyLimit::inFlight)
+          .description("Requests holding a slot")
+          .tag("workload", name)
+          .register(meterRegistry);
+      Gauge.builder("bulkhead.queued", concurrencyLimit, ConcurrencyLimit::queued)
+          .description("Requests waiting for a slot")
+          .tag("workload", name)
+          .register(meterRegistry);
+      rejected.put(workload, Counter.builder("bulkhead.rejected")
+          .description("Requests shed with 429")
+          .tag("workload", name)
+          .register(meterRegistry));
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Admits a request of this kind, or throws {@link OverloadedException}.
+   */
+  public ConcurrencyLimit.Permit acquire(Workload workload) {
+    try {
+      return limits.get(workload).acquire();
+    } catch (OverloadedException e) {
+      rejected.get(workload).increment();
+      throw e;
+    }
+  }
+
+  /**
+   * Feeds the latency of a MinIO call, named as in {@link StorageMetrics}, to the limit
+   * of its kind.
+   */
+  public void observe(String operation, long latency, TimeUnit unit) {
+    Workload workload = switch (operation) {
+      case "upload", "upload_part", "complete_upload" -> Workload.UPLOAD;
+      case "download" -> Workload.DOWNLOAD;
+      case "list" -> Workload.LIST;
+      case "delete_batch" -> Workload.DELETE;
+      default -> Workload.METADATA;
+    };
+    limits.get(workload).observe(latency, unit);
+  }
+}
@@ -0,0 +1,137 @@
+package com.cbs.uploads_service.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * A count-based circuit breaker. It opens once at least {@code failureRateThreshold} of
+ * the last {@code windowSize} calls failed, given {@code minimumCalls} of them, and
+ * then rejects calls with {@link StorageUnavailableException} for {@code openDuration}.
+ * After that up to {@code halfOpenCalls} trial calls are let through: the first success
+ * closes the breaker again, a failure opens it for another round.
+ * <p>
+ * Every call let through by {@link #acquire()} must report its outcome with
+ * {@link #onSuccess()} or {@link #onFailure()}, or {@link #release()} when the outcome
+ * tells nothing about the guarded service.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, HALF_OPEN, OPEN
+  }
+
+  private final String name;
+  private final boolean[] window;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  private State state = State.CLOSED;
+  private int next;
+  private int recorded;
+  private int failures;
+  private long openedAt;
+  private int trials;
+
+  public CircuitBreaker(
+      String name, int windowSize, int minimumCalls, double failureRateThreshold,
+      Duration openDuration, int halfOpenCalls
+  ) {
+    this.name = name;
+    this.window = new boolean[Math.max(1, windowSize)];
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+    this.failureRateThreshold = failureRateThreshold;
+    this.openNanos = openDuration.toNanos();
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+  }
+
+  /**
+   * Lets a call through, or throws {@link StorageUnavailableException} while open.
+   */
+  public synchronized void acquire() {
+    if (state == State.OPEN) {
+      long remaining = openNanos - (System.nanoTime() - openedAt);
+      if (remaining > 0) {
+        throw unavailable(Duration.ofNanos(remaining));
+      }
+      state = State.HALF_OPEN;
+      trials = 0;
+      log.info("Circuit breaker {} half-open, sending trial calls", name);
+    }
+    if (state == State.HALF_OPEN) {
+      if (trials >= halfOpenCalls) {
+        throw unavailable(Duration.ofSeconds(1));
+      }
+      trials++;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      state = State.CLOSED;
+      reset();
+      log.info("Circuit breaker {} closed", name);
+    } else if (state == State.CLOSED) {
+      record(false);
+    }
+  }
+
+  public synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      open();
+    } else if (state == State.CLOSED) {
+      record(true);
+      if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+        log.warn("Circuit breaker {} opened: {} of the last {} calls failed", name, failures, recorded);
+        open();
+      }
+    }
+  }
+
+  /**
+   * Ends a call without recording it; a trial call of the half-open state is given back.
+   */
+  public synchronized void release() {
+    if (state == State.HALF_OPEN && trials > 0) {
+      trials--;
+    }
+  }
+
+  public synchronized State state() {
+    return state;
+  }
+
+  private void record(boolean failure) {
+    if (recorded == window.length) {
+      if (window[next]) {
+        failures--;
+      }
+    } else {
+      recorded++;
+    }
+    window[next] = failure;
+    if (failure) {
+      failures++;
+    }
+    next = (next + 1) % window.length;
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAt = System.nanoTime();
+    reset();
+  }
+
+  private void reset() {
+    next = 0;
+    recorded = 0;
+    failures = 0;
+  }
+
+  private StorageUnavailableException unavailable(Duration retryAfter) {
+    return new StorageUnavailableException("Storage " + name + " is unavailable, retry later", retryAfter);
+  }
+}
@@ -0,0 +1,177 @@
+package com.cbs.uploads_service.services;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit with a bounded wait queue. Callers beyond the limit wait for a
+ * slot up to {@code queueTimeout}; beyond {@code maxQueue} waiters, or after the
+ * timeout, they are rejected with {@link OverloadedException} right away.
+ * <p>
+ * When adaptive, the limit follows the latency reported through {@link #observe}: a
+ * short-term average is compared with a long-term one, and the limit shrinks by their
+ * ratio once latency grows beyond {@code tolerance} times the usual, and grows by
+ * about its square root per sample while latency is normal and the limit is in use.
+ * It stays between {@code minLimit} and {@code maxLimit}.
+ */
+public class ConcurrencyLimit {
+
+  private static final double SHORT_WEIGHT = 0.2;
+  private static final double LONG_WEIGHT = 0.01;
+  private static final double SMOOTHING = 0.2;
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxQueue;
+  private final long queueTimeoutNanos;
+  private final Duration retryAfter;
+  private final boolean adaptive;
+  private final double tolerance;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+
+  private volatile double estimate;
+  private int inFlight;
+  private int queued;
+  private double shortLatency;
+  private double longLatency;
+
+  public ConcurrencyLimit(
+      String name, int minLimit, int maxLimit, int maxQueue, Duration queueTimeout,
+      Duration retryAfter, boolean adaptive, double tolerance
+  ) {
+    this.name = name;
+    this.maxLimit = Math.max(1, maxLimit);
+    this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+    this.maxQueue = Math.max(0, maxQueue);
+    this.queueTimeoutNanos = queueTimeout.toNanos();
+    this.retryAfter = retryAfter;
+    this.adaptive = adaptive;
+    this.tolerance = tolerance;
+    this.estimate = this.maxLimit;
+  }
+
+  /**
+   * Takes a slot, waiting in the queue if needed. The permit must be released exactly
+   * once; further releases are ignored.
+   */
+  public Permit acquire() {
+    lock.lock();
+    try {
+      if (inFlight < limit() && queued == 0) {
+        inFlight++;
+        return new Permit();
+      }
+      if (queued >= maxQueue) {
+        throw overloaded();
+      }
+
+      queued++;
+      try {
+        long remaining = queueTimeoutNanos;
+        while (inFlight >= limit()) {
+          if (remaining <= 0) {
+            throw overloaded();
+          }
+          remaining = released.awaitNanos(remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw overloaded();
+      } finally {
+        queued--;
+      }
+      inFlight++;
+      return new Permit();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Feeds the latency of one storage call of this kind into the limit.
+   */
+  public void observe(long latency, TimeUnit unit) {
+    if (!adaptive) {
+      return;
+    }
+
+    double nanos = unit.toNanos(latency);
+    lock.lock();
+    try {
+      if (longLatency == 0) {
+        shortLatency = nanos;
+        longLatency = nanos;
+        return;
+      }
+      shortLatency += SHORT_WEIGHT * (nanos - shortLatency);
+      longLatency += LONG_WEIGHT * (nanos - longLatency);
+
+      int before = limit();
+      double gradient = shortLatency <= 0 ? 1.0
+          : Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+      if (gradient < 1.0 || inFlight >= before / 2) {
+        // Growing an idle limit would only let the next burst through unchecked
+        double target = estimate * gradient + (gradient < 1.0 ? 0 : Math.sqrt(estimate));
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate + SMOOTHING * (target - estimate)));
+      }
+      if (limit() > before) {
+        released.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int limit() {
+    return (int) estimate;
+  }
+
+  public int inFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int queued() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private OverloadedException overloaded() {
+    return new OverloadedException("Too many concurrent " + name + " requests, retry later", retryAfter);
+  }
+
+  public final class Permit {
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit() {
+    }
+
+    public void release() {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      lock.lock();
+      try {
+        inFlight--;
+        ConcurrencyLimit.this.released.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
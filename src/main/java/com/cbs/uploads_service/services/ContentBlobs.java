@@ -0,0 +1,367 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Headers;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed storage of deduplicated uploads.
+ * <p>
+ * The bytes of an upload are written once to a blob under
+ * {@code uploads.dedup.blob-prefix} while their SHA-256 is computed, and the upload's own
+ * key becomes an empty reference object whose metadata names the blob, the hash, the
+ * content length and the codec of a compressed blob. When the {@link ObjectIndex}
+ * already maps the hash to a blob, the new blob is dropped again; when the client sends
+ * the hash up front, the body is not read at all. Blobs no reference points to are deleted by {@link #sweepOrphans()}.
+ * <p>
+ * {@link MinioService} resolves references on every read, so callers only ever see the
+ * content, with the SHA-256 as etag.
+ */
+@Slf4j
+@Component
+public class ContentBlobs {
+
+  static final String SHA256 = "content-sha256";
+  static final String CONTENT_KEY = "content-ref";
+  static final String CONTENT_SIZE = "content-size";
+
+  private static final String META_PREFIX = "x-amz-meta-";
+  private static final Pattern HEX_SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+  private final MinioClient client;
+  private final MinioConfig minioConfig;
+  private final UploadProperties.Dedup config;
+  private final ObjectIndex objectIndex;
+  private final StorageMetrics storageMetrics;
+
+  /**
+   * Blobs found unreferenced by the previous sweep. The next sweep deletes them unless
+   * it lists a reference to them, so they are never handed out for reuse.
+   */
+  private volatile Set<String> unreferenced = Set.of();
+
+  public ContentBlobs(
+      MinioClient client,
+      MinioConfig minioConfig,
+      UploadProperties uploadProperties,
+      ObjectIndex objectIndex,
+      StorageMetrics storageMetrics
+  ) {
+    this.client = client;
+    this.minioConfig = minioConfig;
+    this.config = uploadProperties.getDedup();
+    this.objectIndex = objectIndex;
+    this.storageMetrics = storageMetrics;
+  }
+
+  /**
+   * Deduplication needs the index to find existing content by hash.
+   */
+  public boolean isActive() {
+    return config.isEnabled() && objectIndex.isReady();
+  }
+
+  public boolean isBlob(String key) {
+    return key.startsWith(config.getBlobPrefix());
+  }
+
+  public String newBlobKey() {
+    return config.getBlobPrefix() + UUID.randomUUID();
+  }
+
+  /**
+   * Validates and normalizes a SHA-256 sent by a client, null when none was sent.
+   */
+  public static String checkSha256(String sha256) {
+    if (sha256 == null || sha256.isBlank()) {
+      return null;
+    }
+    String normalized = sha256.trim().toLowerCase(Locale.ROOT);
+    if (!HEX_SHA256.matcher(normalized).matches()) {
+      throw new IllegalArgumentException("SHA-256 must be 64 hex characters");
+    }
+    return normalized;
+  }
+
+  public static DigestInputStream digesting(InputStream in) {
+    try {
+      return new DigestInputStream(in, MessageDigest.getInstance("SHA-256"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static String hex(DigestInputStream in) {
+    return HexFormat.of().formatHex(in.getMessageDigest().digest());
+  }
+
+  /**
+   * An existing blob holding content with this hash, checked to be still there. Blobs
+   * awaiting deletion by the next sweep count as absent: a reference to one could be
+   * written behind that sweep's listing and end up pointing at nothing.
+   */
+  public Optional<Blob> find(String sha256) {
+    Optional<String> known = objectIndex.findBlob(sha256);
+    if (known.isEmpty() || unreferenced.contains(known.get())) {
+      return Optional.empty();
+    }
+
+    Optional<StatObjectResponse> stat = stat(known.get());
+    if (stat.isEmpty()) {
+      objectIndex.forgetBlob(known.get());
+      return Optional.empty();
+    }
+    return Optional.of(new Blob(known.get(), sha256, stat.get().size(), ObjectCompression.codec(stat.get()), true));
+  }
+
+  /**
+   * Settles a blob that has just been written: checks it against the hash the client
+   * claimed, and drops it in favour of an existing blob with the same content. The
+   * size is that of the stored bytes, compressed with {@code codec} unless it is null.
+   */
+  public Blob stored(String key, String sha256, long size, String codec, String claimedSha256) {
+    if (claimedSha256 != null && !claimedSha256.equals(sha256)) {
+      remove(key);
+      throw new IllegalArgumentException("Content does not match the given SHA-256");
+    }
+
+    Optional<Blob> existing = find(sha256).filter(blob -> !blob.key().equals(key));
+    if (existing.isPresent()) {
+      remove(key);
+      log.info("Content {} already stored in {}", sha256, existing.get().key());
+      return existing.get();
+    }
+    return new Blob(key, sha256, size, codec, false);
+  }
+
+  /**
+   * Writes {@code fileName} as a reference to the blob. A reused blob is checked again
+   * afterwards, in case a sweep deleted it in the meantime.
+   */
+  public ObjectWriteResponse reference(String fileName, Blob blob, String contentType) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(SHA256, blob.sha256());
+    metadata.put(CONTENT_KEY, blob.key());
+    metadata.put(CONTENT_SIZE, Long.toString(blob.size()));
+    if (blob.codec() != null) {
+      metadata.put(ObjectCompression.CODEC, blob.codec());
+    }
+
+    StorageMetrics.Call call = storageMetrics.start("upload");
+    try {
+      ObjectWriteResponse written = client.putObject(
+          PutObjectArgs.builder()
+              .bucket(minioConfig.getBucketName())
+              .object(fileName)
+              .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
+              .contentType(contentType)
+              .userMetadata(metadata)
+              .build()
+      );
+      call.success();
+
+      if (blob.reused() && stat(blob.key()).isEmpty()) {
+        remove(fileName);
+        objectIndex.forgetBlob(blob.key());
+        throw new IllegalStateException("Stored content was removed concurrently, upload it again");
+      }
+      return written;
+    } catch (IllegalStateException e) {
+      throw e;
+    } catch (Exception e) {
+      call.failure(e);
+      log.error("Error writing reference {}: {}", fileName, e.getMessage());
+      throw new RuntimeException("Error writing reference: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Deletes blobs that two consecutive sweeps found unreferenced. Since {@link #find}
+   * does not reuse blobs the previous sweep found unreferenced, a reference written
+   * while a sweep lists the bucket points at a blob that sweep keeps.
+   */
+  @Scheduled(
+      initialDelayString = "${uploads.dedup.sweep-interval:6h}",
+      fixedDelayString = "${uploads.dedup.sweep-interval:6h}"
+  )
+  public void sweepOrphans() {
+    if (!config.isEnabled()) {
+      return;
+    }
+
+    Set<String> blobs = new HashSet<>();
+    Set<String> referenced = new HashSet<>();
+    StorageMetrics.Call call = storageMetrics.start("list");
+    try {
+      Iterable<Result<Item>> results = client.listObjects(
+          ListObjectsArgs.builder()
+              .bucket(minioConfig.getBucketName())
+              .recursive(true)
+              .includeUserMetadata(true)
+              .build()
+      );
+      for (Result<Item> result : results) {
+        Item item = result.get();
+        if (item.isDir()) {
+          continue;
+        }
+        if (isBlob(item.objectName())) {
+          blobs.add(item.objectName());
+        } else {
+          String contentKey = metadata(item.userMetadata(), CONTENT_KEY);
+          if (contentKey != null) {
+            referenced.add(contentKey);
+          }
+        }
+      }
+      call.success();
+    } catch (Exception e) {
+      call.failure(e);
+      log.warn("Could not sweep orphaned content blobs: {}", e.getMessage());
+      return;
+    }
+
+    blobs.removeAll(referenced);
+    Set<String> orphans = new HashSet<>(blobs);
+    orphans.retainAll(unreferenced);
+    blobs.removeAll(orphans);
+    unreferenced = Set.copyOf(blobs);
+
+    for (String orphan : orphans) {
+      remove(orphan);
+      objectIndex.forgetBlob(orphan);
+    }
+    if (!orphans.isEmpty()) {
+      log.info("Deleted {} orphaned content blob(s)", orphans.size());
+    }
+  }
+
+  private Optional<StatObjectResponse> stat(String key) {
+    StorageMetrics.Call call = storageMetrics.start("stat");
+    try {
+      StatObjectResponse stat = client.statObject(
+          StatObjectArgs.builder()
+              .bucket(minioConfig.getBucketName())
+              .object(key)
+              .build()
+      );
+      call.success();
+      return Optional.of(stat);
+    } catch (ErrorResponseException e) {
+      String code = e.errorResponse().code();
+      if ("NoSuchKey".equals(code) || "NoSuchObject".equals(code) || "NotFound".equals(code)) {
+        call.success();
+        return Optional.empty();
+      }
+      call.failure(e);
+      throw new RuntimeException("Error getting file info: " + e.getMessage(), e);
+    } catch (Exception e) {
+      call.failure(e);
+      throw new RuntimeException("Error getting file info: " + e.getMessage(), e);
+    }
+  }
+
+  private void remove(String key) {
+    StorageMetrics.Call call = storageMetrics.start("delete");
+    try {
+      client.removeObject(
+          RemoveObjectArgs.builder()
+              .bucket(minioConfig.getBucketName())
+              .object(key)
+              .build()
+      );
+      call.success();
+    } catch (Exception e) {
+      call.failure(e);
+      log.warn("Could not delete {}: {}", key, e.getMessage());
+    }
+  }
+
+  /**
+   * The blob a reference points to, or null for an object holding its own content.
+   */
+  public static String contentKey(StatObjectResponse stat) {
+    return metadata(stat.userMetadata(), CONTENT_KEY);
+  }
+
+  /**
+   * The stat of a reference as seen by readers: content length and SHA-256 etag of the
+   * content instead of those of the empty reference object. Other stats are returned as is.
+   */
+  public static StatObjectResponse resolve(StatObjectResponse stat) {
+    String sha256 = metadata(stat.userMetadata(), SHA256);
+    String length = metadata(stat.userMetadata(), CONTENT_SIZE);
+    if (sha256 == null || length == null || contentKey(stat) == null) {
+      return stat;
+    }
+
+    Headers headers = stat.headers().newBuilder()
+        .set("ETag", "\"" + sha256 + "\"")
+        .set("Content-Length", length)
+        .build();
+    return new StatObjectResponse(headers, stat.bucket(), stat.region(), stat.object());
+  }
+
+  /**
+   * Size of a listed object, taking the content length of references. Needs a listing
+   * with user metadata.
+   */
+  public static long size(Item item) {
+    String length = metadata(item.userMetadata(), CONTENT_SIZE);
+    return length == null || metadata(item.userMetadata(), CONTENT_KEY) == null
+        ? item.size()
+        : Long.parseLong(length);
+  }
+
+  /**
+   * Looks up user metadata, which stats return without and listings with the
+   * {@code x-amz-meta-} prefix, in any case.
+   */
+  static String metadata(Map<String, String> metadata, String name) {
+    if (metadata == null) {
+      return null;
+    }
+    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+      String key = entry.getKey();
+      if (key.equalsIgnoreCase(name) || key.equalsIgnoreCase(META_PREFIX + name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A content blob of {@code size} stored bytes, compressed with {@code codec} unless it
+   * is null; {@code reused} when it was stored by an earlier upload.
+   */
+  public record Blob(String key, String sha256, long size, String codec, boolean reused) {
+  }
+}
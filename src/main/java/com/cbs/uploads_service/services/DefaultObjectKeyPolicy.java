@@ -0,0 +1,208 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * Builds {@code [dir/]yyyyMM/[shard/]name} keys in a single pass over a per-thread
+ * buffer, so the key string is the only allocation.
+ * <p>
+ * The file name keeps ASCII letters, digits, {@code .}, {@code _} and {@code -}; runs of
+ * whitespace and underscores become one underscore, accented Latin letters are
+ * transliterated to their base letter, anything else is dropped and leading or trailing
+ * {@code ._-} are trimmed. The month prefix is computed once per month. With
+ * {@code uploads.keys.shards} set, a two-digit hex shard derived from the name spreads
+ * keys of the same month over several prefixes.
+ */
+@Component
+public class DefaultObjectKeyPolicy implements ObjectKeyPolicy {
+
+  static final String UNNAMED = "unnamed_file";
+
+  private static final char FIRST_MAPPED = '\u00C0';
+  private static final char LAST_MAPPED = '\u1EFF';
+  private static final char[] TRANSLITERATION = transliterationTable();
+
+  private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+  private final Clock clock;
+  private final boolean datePartitioned;
+  private final int shards;
+
+  private volatile MonthPrefix monthPrefix;
+
+  @Autowired
+  public DefaultObjectKeyPolicy(UploadProperties uploadProperties) {
+    this(uploadProperties, Clock.systemDefaultZone());
+  }
+
+  DefaultObjectKeyPolicy(UploadProperties uploadProperties, Clock clock) {
+    UploadProperties.Keys keys = uploadProperties.getKeys();
+    if (keys.getShards() < 0 || keys.getShards() > 256) {
+      throw new IllegalStateException("uploads.keys.shards must be between 0 and 256");
+    }
+    this.clock = clock;
+    this.datePartitioned = keys.isDatePartitioned();
+    this.shards = keys.getShards();
+  }
+
+  @Override
+  public String objectKey(String originFileName, String dir) {
+    int nameLength = originFileName == null ? 0 : originFileName.length();
+    int dirLength = dir == null ? 0 : dir.length();
+    char[] buf = buffer(dirLength + nameLength + UNNAMED.length() + 16);
+    int len = 0;
+
+    if (dir != null) {
+      int start = 0;
+      int end = dirLength;
+      while (start < end && dir.charAt(start) == '/') {
+        start++;
+      }
+      while (end > start && dir.charAt(end - 1) == '/') {
+        end--;
+      }
+      if (start < end) {
+        dir.getChars(start, end, buf, 0);
+        len = end - start;
+        buf[len++] = '/';
+      }
+    }
+
+    if (datePartitioned) {
+      String month = monthPrefix();
+      month.getChars(0, month.length(), buf, len);
+      len += month.length();
+    }
+
+    int shardAt = len;
+    if (shards > 0) {
+      len += 3;
+    }
+
+    int nameStart = len;
+    len = sanitize(originFileName, buf, len);
+    if (len == nameStart) {
+      UNNAMED.getChars(0, UNNAMED.length(), buf, len);
+      len += UNNAMED.length();
+    }
+
+    if (shards > 0) {
+      int shard = shardOf(buf, nameStart, len);
+      buf[shardAt] = Character.forDigit(shard >> 4, 16);
+      buf[shardAt + 1] = Character.forDigit(shard & 0xf, 16);
+      buf[shardAt + 2] = '/';
+    }
+
+    return new String(buf, 0, len);
+  }
+
+  /**
+   * Writes the sanitized form of {@code fileName} into {@code buf} at {@code pos} and
+   * returns the new end; nothing is written for a name without usable characters.
+   */
+  static int sanitize(String fileName, char[] buf, int pos) {
+    if (fileName == null) {
+      return pos;
+    }
+
+    int start = pos;
+    for (int i = 0; i < fileName.length(); i++) {
+      char c = fileName.charAt(i);
+      if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+        c = '_';
+      } else if (!isAllowed(c)) {
+        c = transliterate(c);
+        if (c == 0) {
+          continue;
+        }
+      }
+
+      if (pos == start && isTrimmed(c)) {
+        continue;
+      }
+      if (c == '_' && buf[pos - 1] == '_') {
+        continue;
+      }
+      buf[pos++] = c;
+    }
+
+    while (pos > start && isTrimmed(buf[pos - 1])) {
+      pos--;
+    }
+    return pos;
+  }
+
+  private String monthPrefix() {
+    long now = clock.millis();
+    MonthPrefix current = monthPrefix;
+    if (current == null || now >= current.endsAt()) {
+      LocalDate today = LocalDate.now(clock);
+      long endsAt = today.withDayOfMonth(1).plusMonths(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+      current = new MonthPrefix(String.format("%d%02d/", today.getYear(), today.getMonthValue()), endsAt);
+      monthPrefix = current;
+    }
+    return current.prefix();
+  }
+
+  private int shardOf(char[] buf, int from, int to) {
+    int hash = 0x811c9dc5;
+    for (int i = from; i < to; i++) {
+      hash = (hash ^ buf[i]) * 0x01000193;
+    }
+    return Integer.remainderUnsigned(hash, shards);
+  }
+
+  private static char[] buffer(int capacity) {
+    char[] buf = BUFFER.get();
+    if (buf.length < capacity) {
+      buf = new char[Math.max(capacity, buf.length * 2)];
+      BUFFER.set(buf);
+    }
+    return buf;
+  }
+
+  private static boolean isAllowed(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+        || c == '.' || c == '_' || c == '-';
+  }
+
+  private static boolean isTrimmed(char c) {
+    return c == '.' || c == '_' || c == '-';
+  }
+
+  private static char transliterate(char c) {
+    return c >= FIRST_MAPPED && c <= LAST_MAPPED ? TRANSLITERATION[c - FIRST_MAPPED] : 0;
+  }
+
+  /**
+   * Base ASCII letter of every precomposed Latin letter between U+00C0 and U+1EFF,
+   * or 0 when there is none.
+   */
+  private static char[] transliterationTable() {
+    char[] table = new char[LAST_MAPPED - FIRST_MAPPED + 1];
+    for (char c = FIRST_MAPPED; c <= LAST_MAPPED; c++) {
+      String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+      char base = decomposed.charAt(0);
+      if (Character.isLetter(c) && base < 0x80 && Character.isLetter(base)) {
+        table[c - FIRST_MAPPED] = base;
+      }
+    }
+    // Letters with a stroke have no decomposition: D/d, O/o and L/l with stroke
+    table['\u0110' - FIRST_MAPPED] = 'D';
+    table['\u0111' - FIRST_MAPPED] = 'd';
+    table['\u00D8' - FIRST_MAPPED] = 'O';
+    table['\u00F8' - FIRST_MAPPED] = 'o';
+    table['\u0141' - FIRST_MAPPED] = 'L';
+    table['\u0142' - FIRST_MAPPED] = 'l';
+    return table;
+  }
+
+  private record MonthPrefix(String prefix, long endsAt) {
+  }
+}
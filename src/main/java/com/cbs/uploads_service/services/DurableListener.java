@@ -0,0 +1,19 @@
+package com.cbs.uploads_service.services;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bean method with a single event parameter as a listener that
+ * {@link EventPublications} calls asynchronously, after the publishing request, and
+ * again after a restart or failure until it returns normally. Listeners must therefore
+ * tolerate seeing an event more than once.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface DurableListener {
+}
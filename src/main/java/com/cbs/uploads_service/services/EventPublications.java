@@ -0,0 +1,510 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable, asynchronous delivery of application events to {@link DurableListener}s, so
+ * follow-up work such as thumbnailing never adds to the latency of the request that
+ * published the event.
+ * <p>
+ * Publishing an event records one publication per matching listener in a log in
+ * {@code uploads.events.directory} and hands it to the bounded {@code eventExecutor};
+ * once the listener returns, the publication is marked completed in the log. A
+ * publication is on disk, fsynced, before {@code publish} returns; publishers arriving
+ * while a sync runs are committed together by the next one, so a burst of uploads pays
+ * for few syncs. Completions and failed attempts only matter for redelivery, so they
+ * are queued and written in batches every {@code flush-interval} by the scheduler; a
+ * crash loses those of the last interval at most, and their publications are
+ * delivered once more.
+ * Publications still incomplete at startup, because the service stopped before they
+ * ran or their listener failed, are delivered again. Failed ones are retried with an
+ * exponential backoff in multiples of {@code uploads.events.resubmit-interval}, and
+ * dropped after {@code max-attempts} failures, so an event its listener can never
+ * handle does not stay in the log forever. The log is rewritten with only the
+ * incomplete publications at startup and after {@code compact-after} entries. Published
+ * as {@code events.publications.incomplete} and {@code events.deliveries{listener,outcome}}.
+ */
+@Slf4j
+@Component
+public class EventPublications implements SmartInitializingSingleton {
+
+  static final String LOG_FILE = "publications.log";
+
+  private final UploadProperties.Events config;
+  private final ApplicationContext context;
+  private final ObjectMapper objectMapper;
+  private final Executor eventExecutor;
+  private final MeterRegistry meterRegistry;
+
+  private final Map<Class<?>, List<Listener>> listenersByType = new ConcurrentHashMap<>();
+  private final Map<String, Listener> listeners = new LinkedHashMap<>();
+  private final Map<UUID, Publication> incomplete = new ConcurrentHashMap<>();
+  private final Queue<ObjectNode> unwritten = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Published entries queued so far, counted after they are queued, and how many of
+   * them are known to be on disk.
+   */
+  private final AtomicLong queuedPublished = new AtomicLong();
+  private volatile long syncedPublished;
+
+  /**
+   * Guarded by {@code this}, like the entry count since the last compaction.
+   */
+  private FileChannel channel;
+  private BufferedWriter writer;
+  private int entries;
+
+  public EventPublications(
+      UploadProperties uploadProperties,
+      ApplicationContext context,
+      ObjectMapper objectMapper,
+      @Qualifier("eventExecutor") Executor eventExecutor,
+      MeterRegistry meterRegistry
+  ) {
+    this.config = uploadProperties.getEvents();
+    this.context = context;
+    this.objectMapper = objectMapper;
+    this.eventExecutor = eventExecutor;
+    this.meterRegistry = meterRegistry;
+
+    Gauge.builder("events.publications.incomplete", incomplete, Map::size)
+        .description("Publications whose listener has not completed yet")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Finds the listeners once all beans exist, and reads back the publications the
+   * previous run left incomplete.
+   */
+  @Override
+  public void afterSingletonsInstantiated() {
+    for (String name : context.getBeanNamesForType(Object.class, false, false)) {
+      Class<?> type = context.getType(name);
+      if (type == null) {
+        continue;
+      }
+      Map<Method, DurableListener> methods = MethodIntrospector.selectMethods(ClassUtils.getUserClass(type),
+          (MethodIntrospector.MetadataLookup<DurableListener>) method ->
+              AnnotatedElementUtils.findMergedAnnotation(method, DurableListener.class));
+      methods.keySet().forEach(method -> register(context.getBean(name), method));
+    }
+    // Events published while beans were created saw no listeners
+    listenersByType.clear();
+
+    synchronized (this) {
+      load();
+      compact();
+    }
+    log.info("{} durable event listener(s), {} incomplete publication(s) to deliver",
+        listeners.size(), incomplete.size());
+  }
+
+  private void register(Object bean, Method method) {
+    if (method.getParameterCount() != 1) {
+      throw new IllegalStateException("@DurableListener method must take exactly one event: " + method);
+    }
+    Method invocable = AopUtils.selectInvocableMethod(method, bean.getClass());
+    ReflectionUtils.makeAccessible(invocable);
+    String id = ClassUtils.getUserClass(bean).getSimpleName() + "." + method.getName();
+    Listener listener = new Listener(id, bean, invocable, method.getParameterTypes()[0]);
+    if (listeners.putIfAbsent(id, listener) != null) {
+      throw new IllegalStateException("Duplicate durable listener " + id);
+    }
+  }
+
+  /**
+   * Receives every application event, and records and schedules a publication for each
+   * listener that takes it. Returns once the publications are on disk.
+   */
+  @EventListener
+  public void publish(Object event) {
+    List<Listener> matching = listenersByType.computeIfAbsent(event.getClass(), type -> listeners.values().stream()
+        .filter(listener -> listener.eventType().isAssignableFrom(type))
+        .toList());
+    if (matching.isEmpty()) {
+      return;
+    }
+
+    List<Publication> publications = new ArrayList<>(matching.size());
+    for (Listener listener : matching) {
+      Publication publication = new Publication(UUID.randomUUID(), listener, event, Instant.now());
+      // Incomplete before it is logged, so a compaction in between still writes it
+      incomplete.put(publication.id, publication);
+      append(published(publication));
+      publications.add(publication);
+    }
+    sync(queuedPublished.addAndGet(publications.size()));
+    publications.forEach(this::submit);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void resubmitIncomplete() {
+    incomplete.values().forEach(this::submit);
+  }
+
+  /**
+   * Delivers again the publications whose listener failed and whose backoff is over,
+   * and those that did not fit the queue.
+   */
+  @Scheduled(
+      initialDelayString = "${uploads.events.resubmit-interval:5m}",
+      fixedDelayString = "${uploads.events.resubmit-interval:5m}"
+  )
+  public void resubmitFailed() {
+    for (Publication publication : incomplete.values()) {
+      if (publication.failed && --publication.intervalsToWait <= 0) {
+        submit(publication);
+      }
+    }
+  }
+
+  int incompleteCount() {
+    return incomplete.size();
+  }
+
+  private void submit(Publication publication) {
+    if (!publication.running.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      eventExecutor.execute(() -> deliver(publication));
+    } catch (RejectedExecutionException e) {
+      publication.failed = true;
+      publication.running.set(false);
+      log.warn("Event queue is full, {} for {} will be resubmitted", publication.event, publication.listener.id());
+    }
+  }
+
+  private void deliver(Publication publication) {
+    Listener listener = publication.listener;
+    try {
+      listener.method().invoke(listener.bean(), publication.event);
+      incomplete.remove(publication.id);
+      append(completed(publication));
+      deliveries(listener, "success").increment();
+    } catch (Exception e) {
+      Throwable cause = e instanceof InvocationTargetException && e.getCause() != null ? e.getCause() : e;
+      deliveries(listener, "failure").increment();
+      failed(publication, cause);
+    } finally {
+      publication.running.set(false);
+    }
+  }
+
+  /**
+   * Schedules the next attempt of a failed publication, or drops it once it has used
+   * up its attempts.
+   */
+  private void failed(Publication publication, Throwable cause) {
+    Listener listener = publication.listener;
+    int attempts = ++publication.attempts;
+    if (attempts >= config.getMaxAttempts()) {
+      incomplete.remove(publication.id);
+      append(dropped(publication));
+      deliveries(listener, "dropped").increment();
+      log.error("Listener {} failed {} times on {}, dropping it: {}",
+          listener.id(), attempts, publication.event, cause.getMessage());
+      return;
+    }
+
+    publication.intervalsToWait = 1 << Math.min(attempts - 1, 20);
+    publication.failed = true;
+    append(attempted(publication));
+    log.warn("Listener {} failed on {}, will be resubmitted: {}", listener.id(), publication.event, cause.getMessage());
+  }
+
+  private Counter deliveries(Listener listener, String outcome) {
+    return Counter.builder("events.deliveries")
+        .tag("listener", listener.id())
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  private ObjectNode published(Publication publication) {
+    ObjectNode entry = objectMapper.createObjectNode();
+    entry.put("id", publication.id.toString());
+    entry.put("listener", publication.listener.id());
+    entry.put("type", publication.event.getClass().getName());
+    entry.set("event", objectMapper.valueToTree(publication.event));
+    entry.put("publishedAt", publication.publishedAt.toString());
+    if (publication.attempts > 0) {
+      entry.put("attempts", publication.attempts);
+    }
+    return entry;
+  }
+
+  private ObjectNode attempted(Publication publication) {
+    ObjectNode entry = objectMapper.createObjectNode();
+    entry.put("id", publication.id.toString());
+    entry.put("attempts", publication.attempts);
+    return entry;
+  }
+
+  private ObjectNode dropped(Publication publication) {
+    ObjectNode entry = completed(publication);
+    entry.put("dropped", true);
+    return entry;
+  }
+
+  private ObjectNode completed(Publication publication) {
+    ObjectNode entry = objectMapper.createObjectNode();
+    entry.put("id", publication.id.toString());
+    entry.put("completed", true);
+    return entry;
+  }
+
+  /**
+   * Queues an entry for the log.
+   */
+  private void append(ObjectNode entry) {
+    unwritten.add(entry);
+  }
+
+  /**
+   * Group commit: waits until the first {@code published} published entries are on
+   * disk. Whoever gets the lock first writes and syncs everything queued by then,
+   * including the entries of publishers still waiting, which then find nothing to do.
+   */
+  private void sync(long published) {
+    if (syncedPublished >= published) {
+      return;
+    }
+    synchronized (this) {
+      if (syncedPublished >= published) {
+        return;
+      }
+      // Everything counted here is already queued, since entries are counted after that
+      long queued = queuedPublished.get();
+      write(true);
+      syncedPublished = queued;
+    }
+  }
+
+  /**
+   * Writes the queued entries to the log with a single flush, and compacts it once it
+   * has grown by {@code compact-after} entries. Without a log, delivery still happens,
+   * just not after a restart.
+   */
+  @Scheduled(
+      initialDelayString = "${uploads.events.flush-interval:200ms}",
+      fixedDelayString = "${uploads.events.flush-interval:200ms}"
+  )
+  public synchronized void flush() {
+    if (!unwritten.isEmpty()) {
+      write(false);
+    }
+  }
+
+  /**
+   * Writes the queued entries, syncing them to the device when {@code force} is set.
+   * Must hold the lock.
+   */
+  private void write(boolean force) {
+    try {
+      for (ObjectNode entry = unwritten.poll(); entry != null; entry = unwritten.poll()) {
+        if (writer != null) {
+          writer.write(objectMapper.writeValueAsString(entry));
+          writer.newLine();
+          entries++;
+        }
+      }
+      if (writer != null) {
+        writer.flush();
+        if (force) {
+          channel.force(false);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Could not record event publications: {}", e.getMessage());
+    }
+    if (entries >= config.getCompactAfter()) {
+      compact();
+    }
+  }
+
+  /**
+   * Writes what is still queued before the service stops.
+   */
+  @PreDestroy
+  public synchronized void close() {
+    write(true);
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        log.warn("Could not close event publication log: {}", e.getMessage());
+      }
+      writer = null;
+      channel = null;
+    }
+  }
+
+  /**
+   * Reads the incomplete publications from the log. Must hold the lock.
+   */
+  private void load() {
+    Path file = config.getDirectory().resolve(LOG_FILE);
+    if (!Files.isRegularFile(file)) {
+      return;
+    }
+
+    Map<UUID, JsonNode> pending = new LinkedHashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank()) {
+          continue;
+        }
+        JsonNode entry = objectMapper.readTree(line);
+        UUID id = UUID.fromString(entry.path("id").asText());
+        if (entry.path("completed").asBoolean()) {
+          pending.remove(id);
+        } else if (entry.has("listener")) {
+          pending.put(id, entry);
+        } else if (pending.get(id) instanceof ObjectNode published) {
+          published.put("attempts", entry.path("attempts").asInt());
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // A line cut short by a crash ends the log; what was read before it still counts
+      log.warn("Stopped reading event publication log {}: {}", file, e.getMessage());
+    }
+
+    Map<String, Class<?>> types = new HashMap<>();
+    for (Map.Entry<UUID, JsonNode> pendingEntry : pending.entrySet()) {
+      JsonNode entry = pendingEntry.getValue();
+      Listener listener = listeners.get(entry.path("listener").asText());
+      if (listener == null) {
+        log.warn("Dropping publication {} for unknown listener {}", pendingEntry.getKey(), entry.path("listener").asText());
+        continue;
+      }
+      try {
+        Class<?> type = types.computeIfAbsent(entry.path("type").asText(), this::eventType);
+        Object event = objectMapper.treeToValue(entry.path("event"), type);
+        Instant publishedAt = Instant.parse(entry.path("publishedAt").asText());
+        Publication publication = new Publication(pendingEntry.getKey(), listener, event, publishedAt);
+        publication.attempts = entry.path("attempts").asInt(0);
+        incomplete.put(pendingEntry.getKey(), publication);
+      } catch (Exception e) {
+        log.warn("Dropping unreadable publication {}: {}", pendingEntry.getKey(), e.getMessage());
+      }
+    }
+  }
+
+  private Class<?> eventType(String name) {
+    try {
+      return ClassUtils.forName(name, context.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("Unknown event type " + name, e);
+    }
+  }
+
+  /**
+   * Rewrites the log with only the incomplete publications and reopens it for
+   * appending. Must hold the lock.
+   */
+  private void compact() {
+    Path directory = config.getDirectory();
+    Path file = directory.resolve(LOG_FILE);
+    try {
+      if (writer != null) {
+        writer.close();
+        writer = null;
+        channel = null;
+      }
+      Files.createDirectories(directory);
+      Path tmp = Files.createTempFile(directory, LOG_FILE, ".tmp");
+      try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE);
+           BufferedWriter lines = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8))) {
+        for (Publication publication : new ArrayList<>(incomplete.values())) {
+          lines.write(objectMapper.writeValueAsString(published(publication)));
+          lines.newLine();
+        }
+        lines.flush();
+        // Synced before it replaces the log, which may hold publications not yet delivered
+        out.force(false);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      entries = incomplete.size();
+      channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      log.warn("Could not write event publication log {}, events will not survive a restart: {}",
+          file, e.getMessage());
+    }
+  }
+
+  private record Listener(String id, Object bean, Method method, Class<?> eventType) {
+  }
+
+  private static final class Publication {
+
+    final UUID id;
+    final Listener listener;
+    final Object event;
+    final Instant publishedAt;
+    final AtomicBoolean running = new AtomicBoolean();
+    volatile boolean failed;
+    volatile int attempts;
+
+    /**
+     * Resubmission rounds left before the next attempt; only the scheduler counts down.
+     */
+    volatile int intervalsToWait;
+
+    Publication(UUID id, Listener listener, Object event, Instant publishedAt) {
+      this.id = id;
+      this.listener = listener;
+      this.event = event;
+      this.publishedAt = publishedAt;
+    }
+  }
+}
@@ -0,0 +1,8 @@
+package com.cbs.uploads_service.services;
+
+/**
+ * Published once an object has been deleted from MinIO, by a single or a bulk delete.
+ * Delivered to {@link DurableListener}s after the delete has been answered.
+ */
+public record FileDeleted(String fileName) {
+}
@@ -0,0 +1,68 @@
+package com.cbs.uploads_service.services;
+
+import io.minio.StatObjectResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Object body served from the {@link ObjectDiskCache}, read with positional reads so
+ * several windows of one file can be open at once. It is copied to the response
+ * through the usual buffer: a servlet output stream is no file or socket channel, so
+ * {@link FileChannel#transferTo} would only copy through a heap buffer of its own.
+ */
+class FileObjectContent extends ObjectContent {
+
+  private final FileChannel channel;
+  private final long end;
+  private long position;
+
+  FileObjectContent(FileChannel channel, long offset, long end, StatObjectResponse stat) {
+    super(null, stat);
+    this.channel = channel;
+    this.position = offset;
+    this.end = end;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (position >= end) {
+      return -1;
+    }
+
+    int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+    if (read > 0) {
+      position += read;
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) {
+    long skipped = Math.max(0, Math.min(n, end - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return (int) Math.min(Integer.MAX_VALUE, end - position);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
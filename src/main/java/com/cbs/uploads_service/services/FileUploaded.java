@@ -0,0 +1,8 @@
+package com.cbs.uploads_service.services;
+
+/**
+ * Published once an object has been written to MinIO, by a single or a multipart upload.
+ * Delivered to {@link DurableListener}s after the upload has been answered.
+ */
+public record FileUploaded(String fileName, String contentType, long size, String etag) {
+}
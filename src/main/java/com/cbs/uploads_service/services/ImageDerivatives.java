@@ -0,0 +1,363 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.utils.Futures;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.minio.StatObjectResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resized variants of uploaded images, for previews that do not need the original.
+ * <p>
+ * Derivatives are rendered on the {@code derivativeExecutor} pool and kept in memory,
+ * keyed by source key, etag and variant, so a rewritten image never serves an old
+ * variant and concurrent requests for the same variant share one render. Large
+ * sources are decoded with subsampling and scaled down in halving steps, which keeps
+ * memory and aliasing low. The cached keys are also indexed by source key, so a
+ * deletion drops its variants without scanning the cache. Hit/miss/eviction counts are
+ * published as {@code cache.*{cache="image-derivatives"}}.
+ */
+@Slf4j
+@Component
+public class ImageDerivatives {
+
+  private static final Set<String> FORMATS = Set.of("jpeg", "png");
+
+  private final MinioService minioService;
+  private final UploadProperties.Derivatives config;
+  private final Executor derivativeExecutor;
+  private final AsyncCache<Key, Derivative> cache;
+  private final Map<String, Set<Key>> keysByFile = new ConcurrentHashMap<>();
+
+  public ImageDerivatives(
+      MinioService minioService,
+      UploadProperties uploadProperties,
+      @Qualifier("derivativeExecutor") Executor derivativeExecutor,
+      MeterRegistry meterRegistry
+  ) {
+    this.minioService = minioService;
+    this.config = uploadProperties.getDerivatives();
+    this.derivativeExecutor = derivativeExecutor;
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(config.getCacheSize().toBytes())
+        .weigher((Key key, Derivative derivative) -> derivative.body().length)
+        .removalListener((Key key, Derivative derivative, RemovalCause cause) -> {
+          if (cause != RemovalCause.REPLACED) {
+            unindex(key);
+          }
+        })
+        .recordStats()
+        .buildAsync();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "image-derivatives");
+  }
+
+  /**
+   * Validates the request parameters of a derivative. Either dimension may be left out;
+   * the image is fitted into the given box keeping its aspect ratio and never enlarged.
+   */
+  public Spec spec(Integer width, Integer height, String format, Integer quality) {
+    if (width == null && height == null) {
+      throw new IllegalArgumentException("Give a width, a height or both");
+    }
+    checkDimension("width", width);
+    checkDimension("height", height);
+
+    String normalized = format == null || format.isBlank() ? null : format.toLowerCase(Locale.ROOT);
+    if ("jpg".equals(normalized)) {
+      normalized = "jpeg";
+    }
+    if (normalized != null && !FORMATS.contains(normalized)) {
+      throw new IllegalArgumentException("Format must be one of " + FORMATS);
+    }
+
+    int q = quality == null ? config.getDefaultQuality() : quality;
+    if (q < 1 || q > 100) {
+      throw new IllegalArgumentException("Quality must be between 1 and 100");
+    }
+    return new Spec(width, height, normalized, q);
+  }
+
+  /**
+   * Entity tag of the derivative, known without rendering it.
+   */
+  public String etag(StatObjectResponse source, Spec spec) {
+    return ObjectIndex.unquote(source.etag()) + "-" + spec.tag();
+  }
+
+  /**
+   * Returns the derivative of the image, rendering it unless it is cached. Throws
+   * {@link IllegalArgumentException} for sources that cannot be resized and
+   * {@link RejectedExecutionException} when the render queue is full or the render
+   * does not finish within {@code uploads.derivatives.render-timeout}.
+   */
+  public Derivative get(String fileName, StatObjectResponse source, Spec spec) {
+    checkSource(fileName, source.contentType(), source.size());
+
+    CompletableFuture<Derivative> future = render(new Key(fileName, ObjectIndex.unquote(source.etag()), spec));
+    try {
+      return future.get(config.getRenderTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new RejectedExecutionException("Timed out resizing " + fileName);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException("Interrupted while resizing " + fileName);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException("Error resizing image: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Renders the configured widths of a freshly uploaded image once the upload has been
+   * answered, so the first preview request is already a cache hit. A full render queue
+   * fails the delivery, which is then tried again later.
+   */
+  @DurableListener
+  public void pregenerate(FileUploaded event) {
+    if (config.getPregenerateWidths().isEmpty() || !isImage(event.contentType())
+        || event.size() > config.getMaxSourceSize().toBytes()) {
+      return;
+    }
+
+    List<CompletableFuture<Derivative>> renders = new ArrayList<>();
+    for (int width : config.getPregenerateWidths()) {
+      renders.add(render(new Key(event.fileName(), ObjectIndex.unquote(event.etag()), spec(width, null, null, null))));
+    }
+    try {
+      CompletableFuture.allOf(renders.toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException e) {
+      if (Futures.cause(e) instanceof IllegalArgumentException cause) {
+        // Not a resizable image after all; another attempt would not change that
+        log.debug("Not pregenerating {}: {}", event.fileName(), cause.getMessage());
+        return;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Drops the cached variants of a deleted image.
+   */
+  @DurableListener
+  public void forget(FileDeleted event) {
+    Set<Key> keys = keysByFile.remove(event.fileName());
+    if (keys != null) {
+      cache.synchronous().invalidateAll(keys);
+    }
+  }
+
+  private CompletableFuture<Derivative> render(Key key) {
+    return cache.get(key, (k, executor) -> {
+      index(k);
+      try {
+        return CompletableFuture.supplyAsync(() -> render(k.fileName(), k.spec()), derivativeExecutor)
+            .whenComplete((derivative, e) -> {
+              if (e != null) {
+                // Failed renders leave the cache without a removal notice
+                unindex(k);
+              }
+            });
+      } catch (RuntimeException e) {
+        unindex(k);
+        throw e;
+      }
+    });
+  }
+
+  /**
+   * The sets are only touched inside {@code compute}, which locks their map entry.
+   */
+  private void index(Key key) {
+    keysByFile.compute(key.fileName(), (fileName, keys) -> {
+      Set<Key> indexed = keys != null ? keys : new HashSet<>();
+      indexed.add(key);
+      return indexed;
+    });
+  }
+
+  private void unindex(Key key) {
+    keysByFile.computeIfPresent(key.fileName(), (fileName, keys) -> {
+      keys.remove(key);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  private Derivative render(String fileName, Spec spec) {
+    try (ObjectContent content = minioService.openObject(fileName);
+         ImageInputStream input = new MemoryCacheImageInputStream(content)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        throw new IllegalArgumentException("Not a readable image: " + fileName);
+      }
+
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if ((long) width * height > config.getMaxSourcePixels()) {
+          throw new IllegalArgumentException("Image is too large to resize: " + width + "x" + height);
+        }
+
+        Dimension target = fit(width, height, spec);
+        // Decode at no less than twice the target size; scaling does the rest
+        int subsampling = Math.max(1, Math.min(width / target.width, height / target.height) / 2);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage image = reader.read(0, param);
+
+        boolean alpha = image.getColorModel().hasAlpha();
+        String format = spec.format() != null ? spec.format() : alpha ? "png" : "jpeg";
+        BufferedImage scaled = scale(image, target, alpha && "png".equals(format));
+        return new Derivative(encode(scaled, format, spec.quality()), MediaType.parseMediaType("image/" + format));
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException e) {
+      log.error("Error resizing image {}: {}", fileName, e.getMessage());
+      throw new RuntimeException("Error resizing image: " + e.getMessage(), e);
+    }
+  }
+
+  static Dimension fit(int width, int height, Spec spec) {
+    double scale = 1.0;
+    if (spec.width() != null) {
+      scale = Math.min(scale, (double) spec.width() / width);
+    }
+    if (spec.height() != null) {
+      scale = Math.min(scale, (double) spec.height() / height);
+    }
+    return new Dimension(
+        Math.max(1, (int) Math.round(width * scale)),
+        Math.max(1, (int) Math.round(height * scale)));
+  }
+
+  /**
+   * Bilinear scaling in steps of at most one half, since a single bilinear step of
+   * more than 2x skips source pixels and aliases.
+   */
+  private static BufferedImage scale(BufferedImage image, Dimension target, boolean alpha) {
+    int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    BufferedImage current = image;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    do {
+      width = Math.max(target.width, width / 2);
+      height = Math.max(target.height, height / 2);
+
+      BufferedImage next = new BufferedImage(width, height, type);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        if (!alpha) {
+          // JPEG has no alpha channel, so transparency is flattened onto white
+          g.setColor(Color.WHITE);
+          g.fillRect(0, 0, width, height);
+        }
+        g.drawImage(current, 0, 0, width, height, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    } while (width != target.width || height != target.height);
+    return current;
+  }
+
+  private static byte[] encode(BufferedImage image, String format, int quality) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+      writer.setOutput(output);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      if ("jpeg".equals(format)) {
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality / 100f);
+      }
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+  private void checkSource(String fileName, String contentType, long size) {
+    if (!isImage(contentType)) {
+      throw new IllegalArgumentException("Not an image: " + fileName);
+    }
+    if (size > config.getMaxSourceSize().toBytes()) {
+      throw new IllegalArgumentException("Image is larger than " + config.getMaxSourceSize() + ": " + fileName);
+    }
+  }
+
+  private void checkDimension(String name, Integer value) {
+    if (value != null && (value < 1 || value > config.getMaxDimension())) {
+      throw new IllegalArgumentException("The " + name + " must be between 1 and " + config.getMaxDimension());
+    }
+  }
+
+  private static boolean isImage(String contentType) {
+    // SVG is drawn by the browser at any size and has no ImageIO reader
+    return contentType != null && contentType.startsWith("image/") && !contentType.startsWith("image/svg");
+  }
+
+  /**
+   * A requested variant; a null format keeps PNG for images with transparency and
+   * uses JPEG otherwise.
+   */
+  public record Spec(Integer width, Integer height, String format, int quality) {
+
+    String tag() {
+      return "w" + (width == null ? "" : width) + "h" + (height == null ? "" : height)
+          + (format == null ? "" : "-" + format) + "-q" + quality;
+    }
+  }
+
+  public record Derivative(byte[] body, MediaType contentType) {
+  }
+
+  private record Key(String fileName, String etag, Spec spec) {
+  }
+}
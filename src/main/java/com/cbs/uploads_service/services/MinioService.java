@@ -1,31 +1,89 @@
 package com.cbs.uploads_service.services;
 
 import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.BulkDeleteRequest;
+import com.cbs.uploads_service.dto.DeleteResult;
 import com.cbs.uploads_service.dto.FileInfo;
+import com.cbs.uploads_service.dto.FileListPage;
+import com.cbs.uploads_service.dto.FileSearchCriteria;
+import com.cbs.uploads_service.dto.IndexedObject;
 import com.cbs.uploads_service.response.Response;
+import com.cbs.uploads_service.utils.Futures;
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
 import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.ErrorResponseException;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.time.LocalDate;
+import java.security.DigestInputStream;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class MinioService {
 
+  private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+  private static final long MAX_PARTS = 10_000;
+  private static final int MAX_LIST_KEYS = 1000;
+  private static final int MAX_DELETE_BATCH = 1000;
+  private static final Duration DOWNLOAD_URL_EXPIRY = Duration.ofDays(7);
+  private static final Duration UPLOAD_URL_EXPIRY = Duration.ofDays(1);
+
   private final MinioClient client;
+
+  @Qualifier("minioAsyncClient")
+  private final MinioAsyncClient asyncClient;
   private final MinioConfig minioConfig;
+  private final UploadProperties uploadProperties;
+  private final PresignedUrlCache presignedUrlCache;
+  private final ObjectIndex objectIndex;
+  private final StatCache statCache;
+  private final ObjectDiskCache diskCache;
+  private final StorageMetrics storageMetrics;
+  private final ObjectKeyPolicy keyPolicy;
+  private final ContentBlobs contentBlobs;
+  private final ObjectCompression compression;
+  private final StorageResilience resilience;
+  private final ApplicationEventPublisher events;
+
+  @Qualifier("uploadExecutor")
+  private final Executor uploadExecutor;
+
+  @Qualifier("deleteExecutor")
+  private final Executor deleteExecutor;
 
   @PostConstruct
   public void initialize() {
@@ -62,220 +120,925 @@ public class MinioService {
   }
 
   public Response uploadFile(MultipartFile file, String dir) {
-    try {
-      String originFileName = file.getOriginalFilename();
-
-      String safeFilename = sanitizeFilename(originFileName);
+    try (InputStream stream = file.getInputStream()) {
+      return uploadStream(stream, file.getSize(), file.getOriginalFilename(), file.getContentType(), dir);
+    } catch (IOException e) {
+      log.error("Error uploading file: {}", e.getMessage());
+      throw new RuntimeException("Error uploading file: " + e.getMessage(), e);
+    }
+  }
 
-      LocalDate now = LocalDate.now();
-      String yearMonth = String.format("%d%02d", now.getYear(), now.getMonthValue());
+  /**
+   * Pipes {@code stream} straight into MinIO without spooling it first.
+   * A negative {@code size} means the length is unknown; the object is then sent
+   * as a multipart upload of {@code uploads.streaming.part-size} parts, which also
+   * bounds the memory used per upload.
+   */
+  public Response uploadStream(InputStream stream, long size, String originFileName, String contentType, String dir) {
+    return uploadStream(stream, size, originFileName, contentType, dir, null);
+  }
 
-      String filePath;
-      if (dir != null && !dir.isEmpty()) {
-        dir = dir.replaceAll("^/+|/+$", "");
-        filePath = dir + "/" + yearMonth + "/" + safeFilename;
-      } else {
-        filePath = yearMonth + "/" + safeFilename;
-      }
+  /**
+   * Like {@link #uploadStream(InputStream, long, String, String, String)}. While
+   * deduplication is active the content is hashed as it streams into a blob and the key
+   * is written as a reference to it, see {@link ContentBlobs}. A {@code sha256} sent by
+   * the client is verified, and when that content is already stored {@code stream} is
+   * not read at all. Compressible content types are compressed on the way, after hashing,
+   * see {@link ObjectCompression}.
+   */
+  public Response uploadStream(
+      InputStream stream, long size, String originFileName, String contentType, String dir, String sha256
+  ) {
+    StorageMetrics.Call call = null;
+    try {
+      String claimedSha256 = ContentBlobs.checkSha256(sha256);
+      String filePath = objectKey(originFileName, dir);
 
       boolean isReplacement = fileExists(filePath);
       if (isReplacement) {
         log.info("File is exists, will be replaced: {}", filePath);
       }
 
-//      String extension = getFileExtension(originFileName);
-//      String fileName = extension;
-//
-//      if (dir != null && !dir.isEmpty()) {
-//        dir = dir.replaceAll("^/+|/+$", "");
-//        fileName = dir + "/" + fileName;
-//      }
+      if (contentType == null || contentType.isBlank()) {
+        contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+      }
 
-      client.putObject(
-          PutObjectArgs.builder()
-              .bucket(minioConfig.getBucketName())
-              .object(filePath)
-              .stream(file.getInputStream(), file.getSize(), -1)
-              .contentType(file.getContentType())
-              .build()
-      );
+      IndexedObject.IndexedObjectBuilder indexed = IndexedObject.builder()
+          .fileName(filePath)
+          .contentType(contentType)
+          .lastModified(ZonedDateTime.now());
+      boolean deduplicated = false;
+      String codec = compression.codecFor(contentType, size);
+      // Bytes received from the client; the index keeps the size of the stored bytes
+      BoundedInputStream received = BoundedInputStream.builder().setInputStream(stream).get();
+
+      if (contentBlobs.isActive()) {
+        ContentBlobs.Blob blob = claimedSha256 == null ? null : contentBlobs.find(claimedSha256).orElse(null);
+        if (blob == null) {
+          String blobKey = contentBlobs.newBlobKey();
+          DigestInputStream digest = ContentBlobs.digesting(received);
+          BoundedInputStream stored = storedBytes(digest, codec);
+
+          call = storageMetrics.start("upload");
+          put(blobKey, stored, codec == null ? size : -1, contentType, codec);
+          call.success();
+          storageMetrics.uploaded(stored.getCount());
+
+          blob = contentBlobs.stored(blobKey, ContentBlobs.hex(digest), stored.getCount(), codec, claimedSha256);
+        }
+
+        contentBlobs.reference(filePath, blob, contentType);
+        deduplicated = blob.reused();
+        indexed.size(blob.size()).etag(blob.sha256()).sha256(blob.sha256()).contentKey(blob.key()).codec(blob.codec());
+      } else {
+        BoundedInputStream stored = storedBytes(received, codec);
+
+        call = storageMetrics.start("upload");
+        ObjectWriteResponse written = put(filePath, stored, codec == null ? size : -1, contentType, codec);
+        call.success();
+        storageMetrics.uploaded(stored.getCount());
+
+        indexed.size(stored.getCount()).etag(ObjectIndex.unquote(written.etag())).codec(codec);
+      }
+
+      IndexedObject object = indexed.build();
+      statCache.invalidate(filePath);
+      objectIndex.put(object);
 
-      log.info("File {} upload successfully: {}", isReplacement ? "replaced" : "uploaded", filePath);
+      events.publishEvent(new FileUploaded(filePath, contentType, object.getSize(), object.getEtag()));
+      log.info("File {} upload successfully: {}{}", isReplacement ? "replaced" : "uploaded", filePath,
+          deduplicated ? " (content already stored)" : "");
 
       String url = getPresignedUrl(filePath);
+      // Report the length the client sent, not that of the compressed bytes; content
+      // that was already stored is not read, so its declared size has to do
+      long contentLength = object.getCodec() == null ? object.getSize()
+          : received.getCount() > 0 || size < 0 ? received.getCount() : size;
 
       return Response.builder()
           .fileName(filePath)
           .originalFileName(originFileName)
-          .contentType(file.getContentType())
-          .size(file.getSize())
+          .contentType(contentType)
+          .size(contentLength)
           .url(url)
           .message(isReplacement ? "File replaced successfully" : "File uploaded successfully")
+          .success(true)
+          .deduplicated(deduplicated)
           .build();
 
+    } catch (IllegalArgumentException e) {
+      throw e;
     } catch (Exception e) {
+      if (call != null) {
+        call.failure(e);
+      }
       log.error("Error uploading file: {}", e.getMessage());
       throw new RuntimeException("Error uploading file: " + e.getMessage(), e);
     }
   }
 
-  private String sanitizeFilename(String fileName) {
-    if (fileName == null || fileName.isEmpty()) {
-      return "unnamed_file";
+  private ObjectWriteResponse put(
+      String key, InputStream stream, long size, String contentType, String codec
+  ) throws Exception {
+    PutObjectArgs.Builder builder = PutObjectArgs.builder()
+        .bucket(minioConfig.getBucketName())
+        .object(key)
+        .stream(RequestBodyException.guard(stream), size < 0 ? -1 : size, partSize(size))
+        .contentType(contentType);
+    if (codec != null) {
+      builder.userMetadata(Map.of(ObjectCompression.CODEC, codec));
     }
+    PutObjectArgs args = builder.build();
+    // The stream is consumed by the first attempt, so uploads are never retried
+    return resilience.once(() -> client.putObject(args));
+  }
+
+  /**
+   * The bytes to store: {@code in} itself or compressed with {@code codec}, counted
+   * either way.
+   */
+  private BoundedInputStream storedBytes(InputStream in, String codec) throws IOException {
+    return BoundedInputStream.builder()
+        .setInputStream(codec == null ? in : compression.compress(in, codec))
+        .get();
+  }
 
-    String sanitized = fileName
-        .replaceAll("[\\s]+", "_")                    // Replace spaces with underscore
-        .replaceAll("[^a-zA-Z0-9._-]", "")           // Remove special characters
-        .replaceAll("_+", "_")                        // Remove multiple underscores
-        .replaceAll("^[._-]+|[._-]+$", "");
+  /**
+   * Builds the object key for an upload through the configured {@link ObjectKeyPolicy}.
+   */
+  public String objectKey(String originFileName, String dir) {
+    return keyPolicy.objectKey(originFileName, dir);
+  }
 
-    if (sanitized.isEmpty() || sanitized.equals(".")) {
-      return "unnamed_file";
+  private long partSize(long size) {
+    long partSize = Math.max(MIN_PART_SIZE, uploadProperties.getStreaming().getPartSize().toBytes());
+    if (size > 0) {
+      // Keep within the 10000 parts allowed for a single object
+      partSize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
     }
-    return sanitized;
+    return partSize;
   }
 
+  /**
+   * Uploads the files in parallel, bounded by the per-request limit here and by the
+   * size of the upload executor globally. Results keep the order of {@code files};
+   * a failed file is reported in its own entry instead of failing the whole batch.
+   */
   public List<Response> uploadFiles(MultipartFile[] files, String dir) {
-    List<Response> responses = new ArrayList<>();
+    Semaphore permits = new Semaphore(Math.max(1, uploadProperties.getBatch().getMaxConcurrencyPerRequest()));
+    List<CompletableFuture<Response>> futures = new ArrayList<>(files.length);
+
     for (MultipartFile file : files) {
-      responses.add(uploadFile(file, dir));
+      permits.acquireUninterruptibly();
+      try {
+        futures.add(CompletableFuture
+            .supplyAsync(() -> uploadFile(file, dir), uploadExecutor)
+            .whenComplete((res, ex) -> permits.release())
+            .exceptionally(ex -> failedUpload(file, ex)));
+      } catch (RejectedExecutionException e) {
+        // The upload queue is full; this file fails, the others still get their turn
+        permits.release();
+        futures.add(CompletableFuture.completedFuture(failedUpload(file, e)));
+      }
+    }
+
+    List<Response> responses = new ArrayList<>(futures.size());
+    for (CompletableFuture<Response> future : futures) {
+      responses.add(future.join());
     }
     return responses;
   }
 
+  private Response failedUpload(MultipartFile file, Throwable ex) {
+    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    return Response.builder()
+        .originalFileName(file.getOriginalFilename())
+        .contentType(file.getContentType())
+        .size(file.getSize())
+        .message(cause.getMessage())
+        .success(false)
+        .build();
+  }
+
   public InputStream downloadFile(String fileName) {
+    return openObject(fileName);
+  }
+
+  /**
+   * Opens the content of the object, decompressing it while it is read when it is
+   * stored compressed. The stat still describes the stored bytes.
+   */
+  public ObjectContent openObject(String fileName) {
+    ObjectContent stored = openStored(fileName);
+    String codec = ObjectCompression.codec(stored.stat());
+    if (codec == null) {
+      return stored;
+    }
+
     try {
-      return client.getObject(
-          GetObjectArgs.builder()
-              .bucket(minioConfig.getBucketName())
-              .object(fileName)
-              .build()
-      );
+      return new ObjectContent(ObjectCompression.decode(stored, codec), stored.stat());
+    } catch (IOException e) {
+      try {
+        stored.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      log.error("Error downloading file: {}", e.getMessage());
+      throw new RuntimeException("Error downloading file: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Opens the stored bytes of the object with a single GetObject call, still compressed
+   * if the object is, see {@link ObjectCompression#codec}. Its response headers carry the
+   * content type, length, etag and last-modified, so no separate statObject is needed;
+   * they also refresh the stat cache. A body in the {@link ObjectDiskCache} is served
+   * from disk once the stat confirms it is current: with the stat cached MinIO is not
+   * contacted at all, otherwise a statObject replaces the download. A reference to a
+   * content blob takes a second GetObject unless its stat is cached.
+   */
+  public ObjectContent openStored(String fileName) {
+    Optional<StatObjectResponse> known = statCache.peek(fileName);
+    if (known.isEmpty() && diskCache.contains(fileName)) {
+      // The stat expired before the body; one stat tells whether the body is still current
+      known = statObject(fileName);
+      if (known.isEmpty()) {
+        diskCache.evict(fileName);
+      }
+    }
+    Optional<ObjectContent> cached = known.flatMap(stat -> diskCache.open(fileName, stat, 0, null));
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+
+    StorageMetrics.Call call = storageMetrics.start("download");
+    try {
+      StatObjectResponse stat = known.orElse(null);
+      String contentKey = stat == null ? null : ContentBlobs.contentKey(stat);
+      GetObjectResponse response = getObject(contentKey != null ? contentKey : fileName);
+
+      if (contentKey == null) {
+        stat = ContentBlobs.resolve(new StatObjectResponse(
+            response.headers(), response.bucket(), response.region(), response.object()));
+        contentKey = ContentBlobs.contentKey(stat);
+        if (contentKey != null) {
+          // The key is a reference; its own body is empty
+          response.close();
+          response = getObject(contentKey);
+        }
+      }
+      call.success();
+      statCache.put(fileName, stat);
+      return new ObjectContent(diskCache.fill(fileName, stat, storageMetrics.countDownload(response)), stat);
     } catch (Exception e) {
+      call.failure(e);
       log.error("Error downloading file: {}", e.getMessage());
       throw new RuntimeException("Error downloading file: " + e.getMessage(), e);
     }
   }
 
-  public StatObjectResponse getFileInfo(String fileName) {
+  /**
+   * Like {@link #openStored}, but with {@code uploads.async.enabled} the caller is not
+   * blocked while MinIO answers; the future completes once the response headers are in.
+   */
+  public CompletableFuture<ObjectContent> openStoredAsync(String fileName) {
+    if (!isAsync()) {
+      return Futures.inline(() -> openStored(fileName));
+    }
+
+    Optional<StatObjectResponse> known = statCache.peek(fileName);
+    if (known.isEmpty() && diskCache.contains(fileName)) {
+      return statObjectAsync(fileName).thenCompose(stat -> {
+        if (stat.isEmpty()) {
+          diskCache.evict(fileName);
+        }
+        return openStoredAsync(fileName, stat);
+      });
+    }
+    return openStoredAsync(fileName, known);
+  }
+
+  private CompletableFuture<ObjectContent> openStoredAsync(String fileName, Optional<StatObjectResponse> known) {
+    Optional<ObjectContent> cached = known.flatMap(stat -> diskCache.open(fileName, stat, 0, null));
+    if (cached.isPresent()) {
+      return CompletableFuture.completedFuture(cached.get());
+    }
+
+    StorageMetrics.Call call = storageMetrics.start("download");
+    String knownKey = known.map(ContentBlobs::contentKey).orElse(null);
+    return getObjectAsync(knownKey != null ? knownKey : fileName)
+        .thenCompose(response -> {
+          if (knownKey != null) {
+            return CompletableFuture.completedFuture(new Opened(known.get(), response));
+          }
+          StatObjectResponse stat = ContentBlobs.resolve(new StatObjectResponse(
+              response.headers(), response.bucket(), response.region(), response.object()));
+          String contentKey = ContentBlobs.contentKey(stat);
+          if (contentKey == null) {
+            return CompletableFuture.completedFuture(new Opened(stat, response));
+          }
+          // The key is a reference; its own body is empty
+          closeQuietly(response);
+          return getObjectAsync(contentKey).thenApply(blob -> new Opened(stat, blob));
+        })
+        .handle((opened, ex) -> {
+          if (ex != null) {
+            Throwable cause = Futures.cause(ex);
+            call.failure(cause);
+            log.error("Error downloading file: {}", cause.getMessage());
+            throw new RuntimeException("Error downloading file: " + cause.getMessage(), cause);
+          }
+          call.success();
+          statCache.put(fileName, opened.stat());
+          return new ObjectContent(
+              diskCache.fill(fileName, opened.stat(), storageMetrics.countDownload(opened.body())), opened.stat());
+        });
+  }
+
+  private CompletableFuture<GetObjectResponse> getObjectAsync(String key) {
+    return getObjectAsync(GetObjectArgs.builder()
+        .bucket(minioConfig.getBucketName())
+        .object(key)
+        .build());
+  }
+
+  /**
+   * A hedged GetObject; the body of the response that loses the race is closed.
+   */
+  private CompletableFuture<GetObjectResponse> getObjectAsync(GetObjectArgs args) {
+    return resilience.hedged("download", () -> asyncClient.getObject(args), MinioService::closeQuietly);
+  }
+
+  private static void closeQuietly(GetObjectResponse response) {
     try {
-      return client.statObject(
-          StatObjectArgs.builder()
-              .bucket(minioConfig.getBucketName())
-              .object(fileName)
-              .build()
-      );
+      response.close();
+    } catch (IOException e) {
+      log.debug("Could not close object stream: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Fetches only the byte window [offset, offset + length) of the stored object.
+   * A null length reads up to the end of the object.
+   */
+  public InputStream downloadFile(String fileName, long offset, Long length) {
+    Optional<StatObjectResponse> stat = statObject(fileName);
+    Optional<ObjectContent> cached = stat.flatMap(known -> diskCache.open(fileName, known, offset, length));
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+
+    String source = stat.map(ContentBlobs::contentKey).orElse(fileName);
+    StorageMetrics.Call call = storageMetrics.start("download");
+    try {
+      GetObjectResponse response = StorageResilience.await(getObjectAsync(rangeArgs(source, offset, length)));
+      call.success();
+      return storageMetrics.countDownload(response);
     } catch (Exception e) {
-      log.error("Error getting file info: {}", e.getMessage());
-      throw new RuntimeException("Error getting file info: " + e.getMessage(), e);
+      call.failure(e);
+      log.error("Error downloading file: {}", e.getMessage());
+      throw new RuntimeException("Error downloading file: " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Like {@link #downloadFile(String, long, Long)}, but with {@code uploads.async.enabled}
+   * the caller is not blocked while MinIO answers; the future completes once the
+   * response headers are in, so a missing object fails it rather than the body.
+   */
+  public CompletableFuture<InputStream> downloadFileAsync(String fileName, long offset, Long length) {
+    if (!isAsync()) {
+      return Futures.inline(() -> downloadFile(fileName, offset, length));
+    }
+
+    return statObjectAsync(fileName).thenCompose(stat -> {
+      Optional<ObjectContent> cached = stat.flatMap(known -> diskCache.open(fileName, known, offset, length));
+      if (cached.isPresent()) {
+        return CompletableFuture.<InputStream>completedFuture(cached.get());
+      }
+
+      String source = stat.map(ContentBlobs::contentKey).orElse(fileName);
+      StorageMetrics.Call call = storageMetrics.start("download");
+      return getObjectAsync(rangeArgs(source, offset, length))
+          .handle((response, ex) -> {
+            if (ex != null) {
+              Throwable cause = Futures.cause(ex);
+              call.failure(cause);
+              log.error("Error downloading file: {}", cause.getMessage());
+              throw new RuntimeException("Error downloading file: " + cause.getMessage(), cause);
+            }
+            call.success();
+            return storageMetrics.countDownload(response);
+          });
+    });
+  }
+
+  private GetObjectArgs rangeArgs(String key, long offset, Long length) {
+    GetObjectArgs.Builder builder = GetObjectArgs.builder()
+        .bucket(minioConfig.getBucketName())
+        .object(key);
+
+    if (offset > 0) {
+      builder.offset(offset);
+    }
+    if (length != null) {
+      builder.offset(offset).length(length);
+    }
+    return builder.build();
+  }
+
+  private GetObjectResponse getObject(String key) throws Exception {
+    return StorageResilience.await(getObjectAsync(key));
+  }
+
+  public StatObjectResponse getFileInfo(String fileName) {
+    return statObject(fileName)
+        .orElseThrow(() -> new RuntimeException("Error getting file info: Object does not exist"));
+  }
+
+  /**
+   * Like {@link #getFileInfo}, without blocking the caller while MinIO answers when
+   * {@code uploads.async.enabled} is set.
+   */
+  public CompletableFuture<StatObjectResponse> getFileInfoAsync(String fileName) {
+    return statObjectAsync(fileName).thenApply(stat -> stat
+        .orElseThrow(() -> new RuntimeException("Error getting file info: Object does not exist")));
+  }
+
+  /**
+   * Like {@link #statObject}, filling the {@link StatCache} once MinIO has answered.
+   */
+  private CompletableFuture<Optional<StatObjectResponse>> statObjectAsync(String fileName) {
+    if (!isAsync()) {
+      return Futures.inline(() -> statObject(fileName));
+    }
+
+    Optional<StatObjectResponse> cached = statCache.getIfPresent(fileName);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    StorageMetrics.Call call = storageMetrics.start("stat");
+    return statObjectHedged(fileName)
+        .handle((stat, ex) -> {
+          Optional<StatObjectResponse> result;
+          if (ex == null) {
+            result = Optional.of(ContentBlobs.resolve(stat));
+          } else if (Futures.cause(ex) instanceof ErrorResponseException e && isNoSuchKey(e)) {
+            result = Optional.empty();
+          } else {
+            Throwable cause = Futures.cause(ex);
+            call.failure(cause);
+            log.error("Error getting file info: {}", cause.getMessage());
+            throw new RuntimeException("Error getting file info: " + cause.getMessage(), cause);
+          }
+          call.success();
+          statCache.put(fileName, result);
+          return result;
+        });
+  }
+
+  /**
+   * Stats through the {@link StatCache}; a missing key is returned, and cached, as empty.
+   */
+  private Optional<StatObjectResponse> statObject(String fileName) {
+    return statCache.get(fileName, key -> {
+      StorageMetrics.Call call = storageMetrics.start("stat");
+      try {
+        StatObjectResponse stat = StorageResilience.await(statObjectHedged(key));
+        call.success();
+        return Optional.of(ContentBlobs.resolve(stat));
+      } catch (ErrorResponseException e) {
+        if (isNoSuchKey(e)) {
+          call.success();
+          return Optional.empty();
+        }
+        call.failure(e);
+        log.error("Error getting file info: {}", e.getMessage());
+        throw new RuntimeException("Error getting file info: " + e.getMessage(), e);
+      } catch (Exception e) {
+        call.failure(e);
+        log.error("Error getting file info: {}", e.getMessage());
+        throw new RuntimeException("Error getting file info: " + e.getMessage(), e);
+      }
+    });
+  }
+
+  private CompletableFuture<StatObjectResponse> statObjectHedged(String key) {
+    StatObjectArgs args = StatObjectArgs.builder()
+        .bucket(minioConfig.getBucketName())
+        .object(key)
+        .build();
+    return resilience.hedged("stat", () -> asyncClient.statObject(args), null);
+  }
+
+  private static boolean isNoSuchKey(ErrorResponseException e) {
+    String code = e.errorResponse().code();
+    return "NoSuchKey".equals(code) || "NoSuchObject".equals(code) || "NotFound".equals(code);
+  }
+
   public void deleteFile(String fileName) {
+    StorageMetrics.Call call = storageMetrics.start("delete");
     try {
-      client.removeObject(
-          RemoveObjectArgs.builder()
-              .bucket(minioConfig.getBucketName())
-              .object(fileName)
-              .build()
-      );
-
-      log.info("File deleted successfully: {}", fileName);
+      RemoveObjectArgs args = RemoveObjectArgs.builder()
+          .bucket(minioConfig.getBucketName())
+          .object(fileName)
+          .build();
+      // Deleting a missing key succeeds, so a delete is safe to repeat
+      resilience.call("delete", () -> {
+        client.removeObject(args);
+        return null;
+      });
+      call.success();
+      deleted(fileName);
     } catch (Exception e) {
+      call.failure(e);
       log.error("Error deleting file: {}", e.getMessage());
       throw new RuntimeException("Error deleting file: " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Like {@link #deleteFile}, without blocking the caller while MinIO answers when
+   * {@code uploads.async.enabled} is set.
+   */
+  public CompletableFuture<Void> deleteFileAsync(String fileName) {
+    if (!isAsync()) {
+      return Futures.inline(() -> {
+        deleteFile(fileName);
+        return null;
+      });
+    }
+
+    StorageMetrics.Call call = storageMetrics.start("delete");
+    RemoveObjectArgs args = RemoveObjectArgs.builder()
+        .bucket(minioConfig.getBucketName())
+        .object(fileName)
+        .build();
+    return resilience.callAsync("delete", () -> asyncClient.removeObject(args))
+        .handle((ignored, ex) -> {
+          if (ex != null) {
+            Throwable cause = Futures.cause(ex);
+            call.failure(cause);
+            log.error("Error deleting file: {}", cause.getMessage());
+            throw new RuntimeException("Error deleting file: " + cause.getMessage(), cause);
+          }
+          call.success();
+          deleted(fileName);
+          return null;
+        });
+  }
+
+  private void deleted(String fileName) {
+    statCache.invalidate(fileName);
+    diskCache.evict(fileName);
+    objectIndex.remove(fileName);
+    events.publishEvent(new FileDeleted(fileName));
+    log.info("File deleted successfully: {}", fileName);
+  }
+
+  /**
+   * Deletes the listed keys, or every object under the prefix, in batches of up to
+   * {@value #MAX_DELETE_BATCH} keys with MinIO's multi-object delete. Up to
+   * {@code uploads.bulk-delete.concurrency} batches run in parallel on the delete
+   * executor; their results are handed to {@code sink} in key order on the calling
+   * thread. As in S3, a key that
+   * does not exist counts as deleted.
+   */
+  public void deleteFiles(BulkDeleteRequest request, Consumer<List<DeleteResult>> sink) {
+    if (request.getPaths() != null) {
+      deleteFiles(request.getPaths().iterator(), request.isDryRun(), sink);
+      return;
+    }
+    try (Stream<FileInfo> files = streamFiles(request.getPrefix(), false)) {
+      deleteFiles(files.map(FileInfo::getFileName).iterator(), request.isDryRun(), sink);
+    }
+  }
+
+  private void deleteFiles(Iterator<String> keys, boolean dryRun, Consumer<List<DeleteResult>> sink) {
+    Semaphore permits = new Semaphore(Math.max(1, uploadProperties.getBulkDelete().getConcurrency()));
+    Deque<CompletableFuture<List<DeleteResult>>> pending = new ArrayDeque<>();
+
+    while (keys.hasNext()) {
+      List<String> batch = new ArrayList<>(MAX_DELETE_BATCH);
+      while (keys.hasNext() && batch.size() < MAX_DELETE_BATCH) {
+        batch.add(keys.next());
+      }
+
+      if (dryRun) {
+        sink.accept(batch.stream()
+            .map(key -> DeleteResult.builder().fileName(key).dryRun(true).build())
+            .toList());
+        continue;
+      }
+
+      permits.acquireUninterruptibly();
+      pending.add(CompletableFuture
+          .supplyAsync(() -> deleteBatch(batch), deleteExecutor)
+          .whenComplete((res, ex) -> permits.release()));
+
+      while (!pending.isEmpty() && pending.peek().isDone()) {
+        sink.accept(pending.poll().join());
+      }
+    }
+
+    while (!pending.isEmpty()) {
+      sink.accept(pending.poll().join());
+    }
+  }
+
+  private List<DeleteResult> deleteBatch(List<String> batch) {
+    Map<String, String> errors = new HashMap<>();
+    StorageMetrics.Call call = storageMetrics.start("delete_batch");
+    try {
+      resilience.call("delete_batch", () -> {
+        errors.clear();
+        Iterable<Result<DeleteError>> results = client.removeObjects(
+            RemoveObjectsArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .objects(batch.stream().map(DeleteObject::new).toList())
+                .build()
+        );
+
+        // The request is only sent while iterating; only failed keys are returned
+        for (Result<DeleteError> result : results) {
+          DeleteError error = result.get();
+          errors.put(error.objectName(), error.code() + ": " + error.message());
+        }
+        return null;
+      });
+      call.success();
+    } catch (Exception e) {
+      call.failure(e);
+      log.error("Error deleting files: {}", e.getMessage());
+      batch.forEach(key -> errors.put(key, "Error deleting file: " + e.getMessage()));
+    }
+
+    List<String> deleted = batch.stream().filter(key -> !errors.containsKey(key)).toList();
+    deleted.forEach(statCache::invalidate);
+    deleted.forEach(objectIndex::remove);
+    diskCache.evictAll(deleted);
+    deleted.forEach(key -> events.publishEvent(new FileDeleted(key)));
+    log.info("Deleted {} of {} files in one batch", deleted.size(), batch.size());
+
+    return batch.stream()
+        .map(key -> DeleteResult.builder()
+            .fileName(key)
+            .deleted(!errors.containsKey(key))
+            .error(errors.get(key))
+            .build())
+        .toList();
+  }
+
   public List<FileInfo> listFiles() {
     return listFiles(null);
   }
 
   public List<FileInfo> listFiles(String prefix) {
-    List<FileInfo> files = new ArrayList<>();
-    try {
-      ListObjectsArgs.Builder builder = ListObjectsArgs.builder()
-          .bucket(minioConfig.getBucketName())
-          .recursive(true);
+    return listFiles(prefix, true);
+  }
 
-      if (prefix != null && !prefix.isEmpty()) {
-        builder.prefix(prefix);
-      }
+  /**
+   * Lists the objects under {@code prefix}. With {@code includeUrls} false no URL is
+   * signed at all, which keeps large listings cheap for callers that do not need them.
+   */
+  public List<FileInfo> listFiles(String prefix, boolean includeUrls) {
+    try (Stream<FileInfo> files = streamFiles(prefix, includeUrls)) {
+      return files.collect(Collectors.toList());
+    }
+  }
 
-      Iterable<Result<Item>> results = client.listObjects(builder.build());
-
-      for (Result<Item> result : results) {
-        Item item = result.get();
-        if (!item.isDir()) {
-          files.add(FileInfo.builder()
-              .fileName(item.objectName())
-              .size(item.size())
-              .lastModified(item.lastModified())
-              .url(getPresignedUrl(item.objectName()))
-              .build());
+  /**
+   * Lazily lists the objects under {@code prefix} in key order. MinIO pages are only
+   * requested as the stream is consumed, so nothing is collected in memory.
+   */
+  public Stream<FileInfo> streamFiles(String prefix, boolean includeUrls) {
+    StorageMetrics.Call call = storageMetrics.start("list");
+    Iterable<Result<Item>> results = client.listObjects(listArgs(prefix, null, null));
+
+    return StreamSupport.stream(results.spliterator(), false)
+        .map(result -> listedItem(result, call))
+        .filter(item -> !item.isDir() && !contentBlobs.isBlob(item.objectName()))
+        .map(item -> toFileInfo(item, includeUrls))
+        .onClose(call::success);
+  }
+
+  /**
+   * Returns at most {@code maxKeys} objects after {@code startAfter}. One extra key is
+   * requested from MinIO to tell whether another page exists.
+   */
+  public FileListPage listFilesPage(String prefix, String startAfter, int maxKeys, boolean includeUrls) {
+    if (maxKeys < 1 || maxKeys > MAX_LIST_KEYS) {
+      throw new IllegalArgumentException("maxKeys must be between 1 and " + MAX_LIST_KEYS);
+    }
+
+    List<FileInfo> files = new ArrayList<>(maxKeys);
+    boolean truncated = false;
+
+    StorageMetrics.Call call = storageMetrics.start("list");
+    try {
+      // A page is one request, so a failed one is fetched again from the start
+      List<Item> items = resilience.call("list", () -> listPage(prefix, startAfter, maxKeys + 1));
+      call.success();
+      for (Item item : items) {
+        if (files.size() == maxKeys) {
+          truncated = true;
+          break;
         }
+        files.add(toFileInfo(item, includeUrls));
       }
     } catch (Exception e) {
+      call.failure(e);
       log.error("Error listing files: {}", e.getMessage());
       throw new RuntimeException("Error listing files: " + e.getMessage(), e);
     }
-    return files;
+
+    return FileListPage.builder()
+        .files(files)
+        .truncated(truncated)
+        .nextStartAfter(truncated ? files.get(files.size() - 1).getFileName() : null)
+        .build();
   }
 
-  public String getPresignedUploadUrl(String fileName) {
+  /**
+   * Searches the metadata index. Fails when the index has not been built yet. Objects
+   * written around this service, such as presigned uploads, are only found after the
+   * next rescan; listings ask MinIO and always include them.
+   */
+  public List<FileInfo> searchFiles(FileSearchCriteria criteria, boolean includeUrls) {
+    if (criteria.getLimit() < 1 || criteria.getLimit() > MAX_LIST_KEYS) {
+      throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIST_KEYS);
+    }
+    if (!objectIndex.isReady()) {
+      throw new IllegalStateException("Object index is not ready yet");
+    }
+
+    return objectIndex.search(criteria).stream()
+        .map(object -> toFileInfo(object, includeUrls))
+        .toList();
+  }
+
+  private ListObjectsArgs listArgs(String prefix, String startAfter, Integer maxKeys) {
+    ListObjectsArgs.Builder builder = ListObjectsArgs.builder()
+        .bucket(minioConfig.getBucketName())
+        .recursive(true);
+
+    if (prefix != null && !prefix.isEmpty()) {
+      builder.prefix(prefix);
+    }
+    if (startAfter != null && !startAfter.isEmpty()) {
+      builder.startAfter(startAfter);
+    }
+    if (maxKeys != null) {
+      builder.maxKeys(maxKeys);
+    }
+    if (uploadProperties.getDedup().isEnabled()) {
+      // Sizes of references are only in their metadata
+      builder.includeUserMetadata(true);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Up to {@code limit} listed objects after {@code startAfter}; the listing stops there,
+   * since MinIO would otherwise keep fetching pages.
+   */
+  private List<Item> listPage(String prefix, String startAfter, int limit) throws Exception {
+    List<Item> items = new ArrayList<>(limit);
+    for (Result<Item> result : client.listObjects(listArgs(prefix, startAfter, limit))) {
+      Item item = result.get();
+      if (!item.isDir() && !contentBlobs.isBlob(item.objectName())) {
+        items.add(item);
+        if (items.size() == limit) {
+          break;
+        }
+      }
+    }
+    return items;
+  }
+
+  private Item listedItem(Result<Item> result, StorageMetrics.Call call) {
     try {
-      return client.getPresignedObjectUrl(
-          GetPresignedObjectUrlArgs.builder()
-              .method(Method.GET)
-              .bucket(minioConfig.getBucketName())
-              .object(fileName)
-              .expiry(1, TimeUnit.DAYS)
-              .build()
-      );
+      return result.get();
     } catch (Exception e) {
-      log.error("Error generating presigned upload URL: {}", e.getMessage());
-      throw new RuntimeException("Error generating presigned upload URL: " + e.getMessage(), e);
+      call.failure(e);
+      log.error("Error listing files: {}", e.getMessage());
+      throw new RuntimeException("Error listing files: " + e.getMessage(), e);
     }
   }
 
+  private FileInfo toFileInfo(IndexedObject object, boolean includeUrls) {
+    return FileInfo.builder()
+        .fileName(object.getFileName())
+        .size(object.getSize())
+        .contentType(object.getContentType())
+        .lastModified(object.getLastModified())
+        .url(includeUrls ? getPresignedUrl(object.getFileName()) : null)
+        .build();
+  }
+
+  private FileInfo toFileInfo(Item item, boolean includeUrls) {
+    return FileInfo.builder()
+        .fileName(item.objectName())
+        .size(ContentBlobs.size(item))
+        .lastModified(item.lastModified())
+        .url(includeUrls ? getPresignedUrl(item.objectName()) : null)
+        .build();
+  }
+
+  public String getPresignedUploadUrl(String fileName) {
+    return presignedUrlCache.get(fileName, Method.PUT, UPLOAD_URL_EXPIRY,
+        () -> presign(fileName, Method.PUT, UPLOAD_URL_EXPIRY, "Error generating presigned upload URL"));
+  }
+
   public boolean fileExists(String fileName) {
     try {
-      client.statObject(
-          StatObjectArgs.builder()
-              .bucket(minioConfig.getBucketName())
-              .object(fileName)
-              .build()
-      );
-      return true;
-
-    } catch (ErrorResponseException e) {
-//      log.error("NoSuchKey {}", e.getMessage());
-//      throw new RuntimeException("Error checking file existence: " + e.getMessage(), e);
-      return false;
+      return statObject(fileName).isPresent();
     } catch (Exception e) {
-//      throw new RuntimeException("Error checking file existence: " + e.getMessage(), e);
       log.warn("Could not check file existence, assuming not exists: {}", e.getMessage());
       return false;
     }
   }
 
+  public CompletableFuture<Boolean> fileExistsAsync(String fileName) {
+    return statObjectAsync(fileName)
+        .thenApply(Optional::isPresent)
+        .exceptionally(ex -> {
+          log.warn("Could not check file existence, assuming not exists: {}", Futures.cause(ex).getMessage());
+          return false;
+        });
+  }
+
+  /**
+   * Signs a download of the object, or of its content blob when it is a reference; the
+   * cache is keyed by the signed key, so a replaced reference gets a fresh URL. A
+   * compressed object is signed with {@code response-content-encoding}, so MinIO
+   * labels the stored bytes with their codec.
+   */
   public String getPresignedUrl(String fileName) {
+    StoredAs stored = storedAs(fileName);
+    String cacheKey = stored.codec() == null ? stored.key() : stored.key() + "#" + stored.codec();
+    return presignedUrlCache.get(cacheKey, Method.GET, DOWNLOAD_URL_EXPIRY,
+        () -> presign(stored.key(), stored.codec(), Method.GET, DOWNLOAD_URL_EXPIRY, "Error generating presigned URL"));
+  }
+
+  /**
+   * The key holding the bytes of the object and their codec. Indexed objects are
+   * resolved from memory, others with a (cached) stat while deduplication or
+   * compression is enabled.
+   */
+  private StoredAs storedAs(String fileName) {
+    Optional<IndexedObject> indexed = objectIndex.get(fileName);
+    if (indexed.isPresent()) {
+      String contentKey = indexed.get().getContentKey();
+      return new StoredAs(contentKey != null ? contentKey : fileName, indexed.get().getCodec());
+    }
+    if (!uploadProperties.getDedup().isEnabled() && !compression.isEnabled()) {
+      return new StoredAs(fileName, null);
+    }
+    return statObject(fileName)
+        .map(stat -> new StoredAs(
+            Optional.ofNullable(ContentBlobs.contentKey(stat)).orElse(fileName),
+            ObjectCompression.codec(stat)))
+        .orElse(new StoredAs(fileName, null));
+  }
+
+  private String presign(String fileName, Method method, Duration expiry, String error) {
+    return presign(fileName, null, method, expiry, error);
+  }
+
+  private String presign(String fileName, String codec, Method method, Duration expiry, String error) {
+    StorageMetrics.Call call = storageMetrics.start("presign");
     try {
-      return client.getPresignedObjectUrl(
-          GetPresignedObjectUrlArgs.builder()
-              .method(Method.GET)
-              .bucket(minioConfig.getBucketName())
-              .object(fileName)
-              .expiry(7, TimeUnit.DAYS)
-              .build()
-      );
+      GetPresignedObjectUrlArgs.Builder builder = GetPresignedObjectUrlArgs.builder()
+          .method(method)
+          .bucket(minioConfig.getBucketName())
+          .object(fileName)
+          .expiry((int) expiry.toSeconds(), TimeUnit.SECONDS);
+      if (codec != null) {
+        builder.extraQueryParams(Map.of("response-content-encoding", codec));
+      }
+      GetPresignedObjectUrlArgs args = builder.build();
+      String url = resilience.call("presign", () -> client.getPresignedObjectUrl(args));
+      call.success();
+      return url;
     } catch (Exception e) {
-      log.error("Error generating presigned URL: {}", e.getMessage());
-      throw new RuntimeException("Error generating presigned URL: " + e.getMessage(), e);
+      call.failure(e);
+      log.error("{}: {}", error, e.getMessage());
+      throw new RuntimeException(error + ": " + e.getMessage(), e);
     }
   }
 
+  private boolean isAsync() {
+    return uploadProperties.getAsync().isEnabled();
+  }
+
+  private record StoredAs(String key, String codec) {
+  }
+
+  private record Opened(StatObjectResponse stat, GetObjectResponse body) {
+  }
+
   private String getFileExtension(String originFileName) {
     if (originFileName == null || originFileName.isEmpty()) {
       return "";
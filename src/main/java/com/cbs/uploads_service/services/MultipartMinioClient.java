@@ -0,0 +1,54 @@
+package com.cbs.uploads_service.services;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.*;
+import io.minio.messages.Part;
+
+/**
+ * Exposes the S3 multipart upload primitives that the MinIO SDK keeps protected,
+ * so uploads can be driven part by part across several client requests. The calls wait
+ * on the asynchronous variants, since the blocking ones are deprecated.
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+
+  private static final Multimap<String, String> NONE = ImmutableMultimap.of();
+
+  public MultipartMinioClient(MinioAsyncClient client) {
+    super(client);
+  }
+
+  public String createUpload(String bucket, String object, String contentType) throws Exception {
+    Multimap<String, String> headers = contentType == null
+        ? NONE
+        : ImmutableMultimap.of("Content-Type", contentType);
+    return StorageResilience.await(createMultipartUploadAsync(bucket, null, object, headers, NONE)).result().uploadId();
+  }
+
+  public UploadPartResponse uploadPart(
+      String bucket, String object, String uploadId, int partNumber, Object data, long length
+  ) throws Exception {
+    return StorageResilience.await(uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber, NONE, NONE));
+  }
+
+  public ListPartsResponse listParts(
+      String bucket, String object, String uploadId, int maxParts, int partNumberMarker
+  ) throws Exception {
+    return StorageResilience.await(listPartsAsync(bucket, null, object, maxParts, partNumberMarker, uploadId, NONE, NONE));
+  }
+
+  public ObjectWriteResponse completeUpload(String bucket, String object, String uploadId, Part[] parts)
+      throws Exception {
+    return StorageResilience.await(completeMultipartUploadAsync(bucket, null, object, uploadId, parts, NONE, NONE));
+  }
+
+  public void abortUpload(String bucket, String object, String uploadId) throws Exception {
+    StorageResilience.await(abortMultipartUploadAsync(bucket, null, object, uploadId, NONE, NONE));
+  }
+
+  public ListMultipartUploadsResponse listUploads(String bucket, String keyMarker, String uploadIdMarker)
+      throws Exception {
+    return StorageResilience.await(
+        listMultipartUploadsAsync(bucket, null, null, null, keyMarker, 1000, null, uploadIdMarker, NONE, NONE));
+  }
+}
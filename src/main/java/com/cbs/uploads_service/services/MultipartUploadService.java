@@ -0,0 +1,314 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.IndexedObject;
+import com.cbs.uploads_service.dto.MultipartSession;
+import com.cbs.uploads_service.dto.UploadedPart;
+import com.cbs.uploads_service.response.Response;
+import io.minio.ListMultipartUploadsResponse;
+import io.minio.ListPartsResponse;
+import io.minio.ObjectWriteResponse;
+import io.minio.StatObjectResponse;
+import io.minio.UploadPartResponse;
+import io.minio.messages.ListMultipartUploadsResult;
+import io.minio.messages.Part;
+import io.minio.messages.Upload;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Resumable uploads on top of S3 multipart uploads. Sessions are identified by the
+ * MinIO upload id together with the object key, so no session state is kept here:
+ * parts can be sent in parallel, retried individually and listed at any time, and
+ * abandoned sessions are found again by the sweeper after a restart.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MultipartUploadService {
+
+  public static final int MIN_PART_NUMBER = 1;
+  public static final int MAX_PART_NUMBER = 10_000;
+
+  private final MultipartMinioClient client;
+  private final MinioConfig minioConfig;
+  private final UploadProperties uploadProperties;
+  private final MinioService minioService;
+  private final ObjectIndex objectIndex;
+  private final StatCache statCache;
+  private final ApplicationEventPublisher events;
+  private final StorageMetrics storageMetrics;
+  private final StorageResilience resilience;
+
+  public MultipartSession initiate(String originFileName, String contentType, String dir) {
+    try {
+      String filePath = minioService.objectKey(originFileName, dir);
+      if (contentType == null || contentType.isBlank()) {
+        contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+      }
+
+      String finalContentType = contentType;
+      // A repeated create would leave a second session behind, so it is not retried
+      String uploadId = storage("create_upload", false,
+          () -> client.createUpload(minioConfig.getBucketName(), filePath, finalContentType));
+      log.info("Multipart upload {} initiated: {}", uploadId, filePath);
+
+      return MultipartSession.builder()
+          .uploadId(uploadId)
+          .fileName(filePath)
+          .originalFileName(originFileName)
+          .contentType(contentType)
+          .maxPartSize(uploadProperties.getMultipart().getMaxPartSize().toBytes())
+          .build();
+    } catch (Exception e) {
+      log.error("Error initiating multipart upload: {}", e.getMessage());
+      throw new RuntimeException("Error initiating multipart upload: " + e.getMessage(), e);
+    }
+  }
+
+  public UploadedPart uploadPart(String filePath, String uploadId, int partNumber, InputStream stream, long size) {
+    if (partNumber < MIN_PART_NUMBER || partNumber > MAX_PART_NUMBER) {
+      throw new IllegalArgumentException("Part number must be between 1 and 10000");
+    }
+    if (size <= 0) {
+      throw new IllegalArgumentException("Content-Length is required for a part");
+    }
+    if (size > uploadProperties.getMultipart().getMaxPartSize().toBytes()) {
+      throw new IllegalArgumentException("Part exceeds the maximum part size of "
+          + uploadProperties.getMultipart().getMaxPartSize());
+    }
+
+    try {
+      // The body is consumed by the first attempt, so parts are never retried here
+      UploadPartResponse res = storage("upload_part", false, () -> client.uploadPart(
+          minioConfig.getBucketName(), filePath, uploadId, partNumber, RequestBodyException.guard(stream), size));
+
+      return UploadedPart.builder()
+          .partNumber(res.partNumber())
+          .etag(res.etag())
+          .size(size)
+          .lastModified(ZonedDateTime.now())
+          .build();
+    } catch (Exception e) {
+      log.error("Error uploading part {} of {}: {}", partNumber, uploadId, e.getMessage());
+      throw new RuntimeException("Error uploading part: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Lists the parts MinIO already holds for the session, ordered by part number.
+   */
+  public List<UploadedPart> listParts(String filePath, String uploadId) {
+    try {
+      List<UploadedPart> parts = new ArrayList<>();
+      int marker = 0;
+      while (true) {
+        int from = marker;
+        ListPartsResponse res = storage("list_parts", true,
+            () -> client.listParts(minioConfig.getBucketName(), filePath, uploadId, 1000, from));
+
+        for (Part part : res.result().partList()) {
+          parts.add(UploadedPart.builder()
+              .partNumber(part.partNumber())
+              .etag(part.etag())
+              .size(part.partSize())
+              .lastModified(part.lastModified())
+              .build());
+        }
+
+        if (!res.result().isTruncated()) {
+          return parts;
+        }
+        marker = res.result().nextPartNumberMarker();
+      }
+    } catch (Exception e) {
+      log.error("Error listing parts of {}: {}", uploadId, e.getMessage());
+      throw new RuntimeException("Error listing parts: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Completes the session with the parts of the client's {@code manifest}, as S3
+   * CompleteMultipartUpload does; each must have landed with the given etag. Without a
+   * manifest the landed parts are used, provided they are numbered 1..N without gaps,
+   * so a part still in flight never leaves a hole in the object.
+   */
+  public Response complete(String filePath, String uploadId, List<UploadedPart> manifest) {
+    List<UploadedPart> uploaded = listParts(filePath, uploadId);
+    if (uploaded.isEmpty()) {
+      throw new IllegalArgumentException("No parts uploaded for " + uploadId);
+    }
+    Part[] parts = manifest == null || manifest.isEmpty() ? contiguous(uploaded) : checked(manifest, uploaded);
+
+    try {
+      // Once completed the session is gone, so a retry could only answer NoSuchUpload
+      ObjectWriteResponse written = storage("complete_upload", false,
+          () -> client.completeUpload(minioConfig.getBucketName(), filePath, uploadId, parts));
+      log.info("Multipart upload {} completed: {}", uploadId, filePath);
+
+      // The stored object, not the key, knows the content type given at initiate
+      statCache.invalidate(filePath);
+      StatObjectResponse stat = minioService.getFileInfo(filePath);
+      long size = stat.size();
+      String etag = ObjectIndex.unquote(written.etag());
+      objectIndex.put(IndexedObject.builder()
+          .fileName(filePath)
+          .size(size)
+          .contentType(stat.contentType())
+          .lastModified(stat.lastModified())
+          .etag(etag)
+          .build());
+      events.publishEvent(new FileUploaded(filePath, stat.contentType(), size, etag));
+
+      return Response.builder()
+          .fileName(filePath)
+          .originalFileName(filePath.substring(filePath.lastIndexOf('/') + 1))
+          .size(size)
+          .url(minioService.getPresignedUrl(filePath))
+          .message("File uploaded successfully")
+          .success(true)
+          .build();
+    } catch (Exception e) {
+      log.error("Error completing multipart upload {}: {}", uploadId, e.getMessage());
+      throw new RuntimeException("Error completing multipart upload: " + e.getMessage(), e);
+    }
+  }
+
+  private static Part[] contiguous(List<UploadedPart> uploaded) {
+    List<UploadedPart> sorted = uploaded.stream()
+        .sorted(Comparator.comparingInt(UploadedPart::getPartNumber))
+        .toList();
+    for (int i = 0; i < sorted.size(); i++) {
+      if (sorted.get(i).getPartNumber() != i + 1) {
+        throw new IllegalArgumentException("Part " + (i + 1) + " has not been uploaded");
+      }
+    }
+    return sorted.stream()
+        .map(part -> new Part(part.getPartNumber(), part.getEtag()))
+        .toArray(Part[]::new);
+  }
+
+  private static Part[] checked(List<UploadedPart> manifest, List<UploadedPart> uploaded) {
+    Map<Integer, String> landed = new HashMap<>();
+    for (UploadedPart part : uploaded) {
+      landed.put(part.getPartNumber(), ObjectIndex.unquote(part.getEtag()));
+    }
+
+    List<UploadedPart> sorted = manifest.stream()
+        .sorted(Comparator.comparingInt(UploadedPart::getPartNumber))
+        .toList();
+    Part[] parts = new Part[sorted.size()];
+    for (int i = 0; i < parts.length; i++) {
+      UploadedPart part = sorted.get(i);
+      if (i > 0 && sorted.get(i - 1).getPartNumber() == part.getPartNumber()) {
+        throw new IllegalArgumentException("Part " + part.getPartNumber() + " is listed twice");
+      }
+      String etag = landed.get(part.getPartNumber());
+      if (etag == null) {
+        throw new IllegalArgumentException("Part " + part.getPartNumber() + " has not been uploaded");
+      }
+      if (part.getEtag() != null && !etag.equals(ObjectIndex.unquote(part.getEtag()))) {
+        throw new IllegalArgumentException("Part " + part.getPartNumber() + " does not have etag " + part.getEtag());
+      }
+      parts[i] = new Part(part.getPartNumber(), etag);
+    }
+    return parts;
+  }
+
+  public void abort(String filePath, String uploadId) {
+    try {
+      storage("abort_upload", true, () -> {
+        client.abortUpload(minioConfig.getBucketName(), filePath, uploadId);
+        return null;
+      });
+      log.info("Multipart upload {} aborted: {}", uploadId, filePath);
+    } catch (Exception e) {
+      log.error("Error aborting multipart upload {}: {}", uploadId, e.getMessage());
+      throw new RuntimeException("Error aborting multipart upload: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Runs a call of the multipart client timed by {@link StorageMetrics} and through
+   * {@link StorageResilience}, retried only when {@code idempotent}.
+   */
+  private <T> T storage(String operation, boolean idempotent, Callable<T> call) throws Exception {
+    StorageMetrics.Call timer = storageMetrics.start(operation);
+    try {
+      T value = idempotent ? resilience.call(operation, call) : resilience.once(call);
+      timer.success();
+      return value;
+    } catch (Exception e) {
+      timer.failure(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Aborts sessions older than {@code uploads.multipart.session-ttl}, so parts of
+   * abandoned uploads do not keep occupying storage.
+   */
+  @Scheduled(
+      initialDelayString = "${uploads.multipart.sweep-interval:15m}",
+      fixedDelayString = "${uploads.multipart.sweep-interval:15m}"
+  )
+  public void sweepAbandonedUploads() {
+    ZonedDateTime cutoff = ZonedDateTime.now().minus(uploadProperties.getMultipart().getSessionTtl());
+    int aborted = 0;
+    int failed = 0;
+
+    try {
+      String keyMarker = null;
+      String uploadIdMarker = null;
+      while (true) {
+        String fromKey = keyMarker;
+        String fromUploadId = uploadIdMarker;
+        ListMultipartUploadsResponse res = storage("list_uploads", true,
+            () -> client.listUploads(minioConfig.getBucketName(), fromKey, fromUploadId));
+        ListMultipartUploadsResult result = res.result();
+
+        for (Upload upload : result.uploads()) {
+          if (upload.initiated() == null || !upload.initiated().isBefore(cutoff)) {
+            continue;
+          }
+          try {
+            abort(upload.objectName(), upload.uploadId());
+            aborted++;
+          } catch (RuntimeException e) {
+            // Already logged; the next sweep tries again, the other uploads go on
+            failed++;
+          }
+        }
+
+        if (!result.isTruncated()) {
+          break;
+        }
+        keyMarker = result.nextKeyMarker();
+        uploadIdMarker = result.nextUploadIdMarker();
+      }
+    } catch (Exception e) {
+      log.warn("Could not sweep abandoned multipart uploads: {}", e.getMessage());
+    }
+
+    if (aborted > 0) {
+      log.info("Aborted {} abandoned multipart upload(s)", aborted);
+    }
+    if (failed > 0) {
+      log.warn("Could not abort {} abandoned multipart upload(s), retrying on the next sweep", failed);
+    }
+  }
+}
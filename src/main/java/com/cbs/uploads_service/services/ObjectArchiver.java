@@ -0,0 +1,243 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.utils.Streams;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams several objects as one ZIP archive while it is being built.
+ * <p>
+ * The next {@code uploads.archive.prefetch} objects are opened in parallel and their
+ * first {@code prefetch-size} bytes read ahead while the current entry is written, so
+ * memory stays bounded however large the archive is. Objects that fit the read-ahead
+ * and have an already-compressed type are stored as is; other compressed types are
+ * deflated at level 0. Objects that cannot be read, and objects whose entry name is
+ * already taken, are skipped and listed in a final {@code ERRORS.txt} entry, since the
+ * response status has already been sent. That entry gets a numbered name when an object
+ * is itself called {@code ERRORS.txt}.
+ */
+@Slf4j
+@Component
+public class ObjectArchiver {
+
+  static final String ERRORS_ENTRY = "ERRORS.txt";
+
+  private final MinioService minioService;
+  private final UploadProperties.Archive config;
+  private final List<MediaType> storedTypes;
+  private final Executor archiveExecutor;
+
+  public ObjectArchiver(
+      MinioService minioService,
+      UploadProperties uploadProperties,
+      @Qualifier("archiveExecutor") Executor archiveExecutor
+  ) {
+    this.minioService = minioService;
+    this.config = uploadProperties.getArchive();
+    this.storedTypes = config.getStoredTypes().stream().map(MediaType::parseMediaType).toList();
+    this.archiveExecutor = archiveExecutor;
+  }
+
+  /**
+   * Writes the objects as ZIP entries named after their key, with {@code stripPrefix}
+   * removed from the start.
+   */
+  public void write(Iterator<String> keys, String stripPrefix, OutputStream out) throws IOException {
+    int window = Math.max(1, config.getPrefetch());
+    Deque<CompletableFuture<Prefetched>> pending = new ArrayDeque<>(window);
+    List<String> errors = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    byte[] buffer = new byte[Streams.BUFFER_SIZE];
+
+    ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, Streams.BUFFER_SIZE));
+    try {
+      while (pending.size() < window && keys.hasNext()) {
+        pending.add(prefetch(keys.next()));
+      }
+
+      while (!pending.isEmpty()) {
+        Prefetched next = pending.poll().join();
+        if (keys.hasNext()) {
+          pending.add(prefetch(keys.next()));
+        }
+
+        if (next.error() != null) {
+          errors.add(next.key() + ": " + next.error());
+          continue;
+        }
+        String name = entryName(next.key(), stripPrefix);
+        if (!names.add(name)) {
+          // A ZIP cannot hold two entries of one name
+          next.close();
+          errors.add(next.key() + ": duplicate entry " + name);
+          continue;
+        }
+        try {
+          writeEntry(zip, name, next, buffer);
+        } catch (UncheckedIOException e) {
+          // Reading from MinIO failed mid-entry; the entry is truncated but the archive stays valid
+          log.warn("Could not archive {}: {}", next.key(), e.getMessage());
+          errors.add(next.key() + ": " + e.getMessage());
+        } finally {
+          next.close();
+        }
+      }
+
+      if (!errors.isEmpty()) {
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(errorsEntry(names)));
+        zip.write(String.join("\n", errors).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+      zip.finish();
+      zip.flush();
+    } finally {
+      // Release the connections of objects that were fetched ahead but not written
+      for (CompletableFuture<Prefetched> future : pending) {
+        future.thenAccept(Prefetched::close);
+      }
+    }
+  }
+
+  private CompletableFuture<Prefetched> prefetch(String key) {
+    return CompletableFuture
+        .supplyAsync(() -> open(key), archiveExecutor)
+        .exceptionally(ex -> {
+          Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+          log.warn("Could not fetch {} for archive: {}", key, cause.getMessage());
+          return new Prefetched(key, null, null, 0, null, cause.getMessage());
+        });
+  }
+
+  private Prefetched open(String key) {
+    ObjectContent content = minioService.openObject(key);
+    try {
+      // The stat gives the stored size, which is not the content length of compressed objects
+      int prefetchSize = (int) config.getPrefetchSize().toBytes();
+      byte[] head = content.readNBytes(prefetchSize);
+      boolean complete = head.length < prefetchSize;
+      if (complete) {
+        content.close();
+      }
+      return new Prefetched(key, content, head, head.length, complete ? null : content, null);
+    } catch (IOException e) {
+      closeQuietly(content);
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeEntry(ZipOutputStream zip, String name, Prefetched object, byte[] buffer) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    if (object.content().stat().lastModified() != null) {
+      entry.setTime(object.content().stat().lastModified().toInstant().toEpochMilli());
+    }
+
+    boolean compressed = isCompressed(object.content().stat().contentType());
+    if (compressed && object.rest() == null) {
+      CRC32 crc = new CRC32();
+      crc.update(object.head(), 0, object.length());
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(object.length());
+      entry.setCompressedSize(object.length());
+      entry.setCrc(crc.getValue());
+    } else {
+      zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+    }
+
+    zip.putNextEntry(entry);
+    zip.write(object.head(), 0, object.length());
+    if (object.rest() != null) {
+      copy(object.rest(), zip, buffer);
+    }
+    zip.closeEntry();
+  }
+
+  /**
+   * Like {@link Streams#copy}, but tells read failures apart from write failures: the
+   * former only lose one entry, the latter mean the client is gone.
+   */
+  private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+    while (true) {
+      int read;
+      try {
+        read = in.read(buffer);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (read == -1) {
+        return;
+      }
+      out.write(buffer, 0, read);
+    }
+  }
+
+  private boolean isCompressed(String contentType) {
+    try {
+      MediaType type = MediaType.parseMediaType(contentType);
+      return storedTypes.stream().anyMatch(stored -> stored.includes(type));
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static String errorsEntry(Set<String> names) {
+    String name = ERRORS_ENTRY;
+    for (int i = 1; names.contains(name); i++) {
+      name = "ERRORS-" + i + ".txt";
+    }
+    return name;
+  }
+
+  private static String entryName(String key, String stripPrefix) {
+    if (stripPrefix != null && !stripPrefix.isEmpty() && key.startsWith(stripPrefix) && key.length() > stripPrefix.length()) {
+      key = key.substring(stripPrefix.length());
+    }
+    return key.startsWith("/") ? key.substring(1) : key;
+  }
+
+  private static void closeQuietly(InputStream in) {
+    try {
+      in.close();
+    } catch (IOException e) {
+      log.debug("Could not close object stream: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * An opened object with its first {@code length} bytes already read into {@code head};
+   * {@code rest} is the remaining stream, or null when the object was read completely.
+   */
+  private record Prefetched(String key, ObjectContent content, byte[] head, int length, InputStream rest,
+                            String error) {
+
+    void close() {
+      if (rest != null) {
+        closeQuietly(rest);
+      }
+    }
+  }
+}
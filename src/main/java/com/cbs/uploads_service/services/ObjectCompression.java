@@ -0,0 +1,131 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.utils.CompressingInputStream;
+import com.cbs.uploads_service.utils.Streams;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import io.minio.StatObjectResponse;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression at rest of compressible uploads.
+ * <p>
+ * The codec is recorded in the {@code content-codec} user metadata of the stored object
+ * rather than as its Content-Encoding, so MinIO and its HTTP client always hand over the
+ * stored bytes unchanged; readers decide whether to pass them on encoded or decode them.
+ */
+@Component
+public class ObjectCompression {
+
+  public static final String GZIP = "gzip";
+  public static final String ZSTD = "zstd";
+
+  static final String CODEC = "content-codec";
+
+  private final UploadProperties.Compression config;
+  private final List<MediaType> types;
+
+  public ObjectCompression(UploadProperties uploadProperties) {
+    this.config = uploadProperties.getCompression();
+    this.types = config.getTypes().stream().map(MediaType::parseMediaType).toList();
+    if (!GZIP.equals(config.getCodec()) && !ZSTD.equals(config.getCodec())) {
+      throw new IllegalStateException("uploads.compression.codec must be gzip or zstd");
+    }
+  }
+
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+
+  /**
+   * The codec to store an upload with, or null to store it raw. A negative size means
+   * the size is unknown.
+   */
+  public String codecFor(String contentType, long size) {
+    if (!config.isEnabled() || (size >= 0 && size < config.getMinSize().toBytes())) {
+      return null;
+    }
+    try {
+      MediaType type = MediaType.parseMediaType(contentType);
+      return types.stream().anyMatch(candidate -> candidate.includes(type)) ? config.getCodec() : null;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  public InputStream compress(InputStream in, String codec) {
+    try {
+      return new CompressingInputStream(in, GZIP.equals(codec)
+          ? out -> new LevelGzipOutputStream(out, config.getGzipLevel())
+          : out -> new ZstdOutputStream(out, config.getZstdLevel()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * The codec an object is stored with, or null for a raw object.
+   */
+  public static String codec(StatObjectResponse stat) {
+    return ContentBlobs.metadata(stat.userMetadata(), CODEC);
+  }
+
+  public static InputStream decode(InputStream in, String codec) throws IOException {
+    return switch (codec) {
+      case GZIP -> new GZIPInputStream(in, Streams.BUFFER_SIZE / 4);
+      case ZSTD -> new ZstdInputStream(in);
+      default -> throw new IOException("Unknown content codec " + codec);
+    };
+  }
+
+  /**
+   * Whether an Accept-Encoding header allows the codec, honouring q=0 exclusions.
+   */
+  public static boolean accepts(List<String> acceptEncoding, String codec) {
+    boolean wildcard = false;
+    for (String header : acceptEncoding) {
+      for (String element : header.split(",")) {
+        String[] parts = element.trim().split(";");
+        String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+        boolean excluded = false;
+        for (int i = 1; i < parts.length; i++) {
+          String param = parts[i].trim();
+          if (param.startsWith("q=") || param.startsWith("Q=")) {
+            try {
+              excluded = Double.parseDouble(param.substring(2)) <= 0;
+            } catch (NumberFormatException e) {
+              excluded = true;
+            }
+          }
+        }
+
+        if (coding.equals(codec) || (GZIP.equals(codec) && coding.equals("x-gzip"))) {
+          return !excluded;
+        }
+        if (coding.equals("*")) {
+          wildcard = !excluded;
+        }
+      }
+    }
+    return wildcard;
+  }
+
+  private static final class LevelGzipOutputStream extends GZIPOutputStream {
+
+    LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+      super(out, Streams.BUFFER_SIZE / 8);
+      def.setLevel(level);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.utils.Streams;
+import io.minio.StatObjectResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Object body together with the metadata that arrived with it, so readers do not
+ * need a separate stat round trip.
+ */
+public class ObjectContent extends FilterInputStream {
+
+  private final StatObjectResponse stat;
+
+  public ObjectContent(InputStream in, StatObjectResponse stat) {
+    super(in);
+    this.stat = stat;
+  }
+
+  public StatObjectResponse stat() {
+    return stat;
+  }
+
+  @Override
+  public long transferTo(OutputStream out) throws IOException {
+    return Streams.copy(this, out);
+  }
+}
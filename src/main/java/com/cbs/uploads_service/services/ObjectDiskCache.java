@@ -0,0 +1,322 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.minio.StatObjectResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Read-through disk cache of object bodies. One version is kept per object name, and
+ * it is only served for a stat with the same etag and size, so a rewritten object
+ * never serves stale bytes.
+ * <p>
+ * Entries are filled by teeing a full download into a temporary file, which is moved
+ * into place only once the whole body has been read; only one fill per key runs at a
+ * time. Every fill publishes under a name of its own, so deleting the file of an
+ * evicted entry, which Caffeine does asynchronously, never hits a newer body. The byte budget is enforced by Caffeine's size-weighted W-TinyLFU eviction,
+ * which deletes the evicted file. Hit/miss/eviction counts are published as
+ * {@code cache.*{cache="object-bodies"}}.
+ * <p>
+ * The directory is claimed with a marker file, and only files with the cache's own
+ * suffixes are ever deleted from it.
+ */
+@Slf4j
+@Component
+public class ObjectDiskCache {
+
+  static final String MARKER = ".object-cache";
+  private static final String BODY_SUFFIX = ".body";
+  private static final String FILL_SUFFIX = ".fill";
+
+  private final UploadProperties.DiskCache config;
+  private final Cache<String, Entry> cache;
+  private final Set<Key> filling = ConcurrentHashMap.newKeySet();
+
+  public ObjectDiskCache(UploadProperties uploadProperties, MeterRegistry meterRegistry) {
+    this.config = uploadProperties.getDiskCache();
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(config.getMaxSize().toBytes())
+        .weigher((String fileName, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.key().size()))
+        .removalListener((String fileName, Entry entry, RemovalCause cause) -> {
+          // Replacements are cleaned up by the fill that made them, which knows both files
+          if (entry != null && cause != RemovalCause.REPLACED) {
+            delete(entry.file());
+          }
+        })
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "object-bodies");
+  }
+
+  /**
+   * Files left by a previous run have no entry in memory, so they are dropped. Refuses
+   * to start on a directory holding anything the cache did not create, since that is
+   * most likely a misconfigured shared volume.
+   */
+  @PostConstruct
+  public void initialize() {
+    if (!config.isEnabled()) {
+      return;
+    }
+
+    Path directory = config.getDirectory();
+    List<Path> leftovers = new ArrayList<>();
+    try {
+      Files.createDirectories(directory);
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          String name = file.getFileName().toString();
+          if (name.equals(MARKER)) {
+            continue;
+          }
+          if (!Files.isRegularFile(file) || !(name.endsWith(BODY_SUFFIX) || name.endsWith(FILL_SUFFIX))) {
+            throw new IllegalStateException("Object disk cache directory " + directory.toAbsolutePath()
+                + " holds " + name + ", which the cache did not create; point uploads.disk-cache.directory"
+                + " at a directory of its own");
+          }
+          leftovers.add(file);
+        }
+      }
+      if (!leftovers.isEmpty() && !Files.exists(directory.resolve(MARKER))) {
+        throw new IllegalStateException("Object disk cache directory " + directory.toAbsolutePath()
+            + " is not marked as a cache directory; point uploads.disk-cache.directory at a directory of its own");
+      }
+
+      Files.writeString(directory.resolve(MARKER), "Object body cache of uploads-service, emptied at startup\n");
+      leftovers.forEach(ObjectDiskCache::delete);
+      log.info("Object disk cache at {} ({} max)", directory.toAbsolutePath(), config.getMaxSize());
+    } catch (IOException e) {
+      log.warn("Could not prepare object disk cache at {}: {}", directory, e.getMessage());
+    }
+  }
+
+  /**
+   * Whether some version of the object is cached; its stat tells whether it is current.
+   */
+  public boolean contains(String fileName) {
+    return config.isEnabled() && cache.asMap().containsKey(fileName);
+  }
+
+  /**
+   * Opens the cached body of the object version described by {@code stat}, positioned
+   * at {@code offset}. A null length reads up to the end of the object.
+   */
+  public Optional<ObjectContent> open(String fileName, StatObjectResponse stat, long offset, Long length) {
+    if (!config.isEnabled() || stat.etag() == null) {
+      return Optional.empty();
+    }
+
+    Entry entry = cache.getIfPresent(fileName);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (!entry.key().equals(key(fileName, stat))) {
+      // The object was rewritten; the old body will not be asked for again
+      cache.asMap().remove(fileName, entry);
+      return Optional.empty();
+    }
+
+    try {
+      FileChannel channel = FileChannel.open(entry.file(), StandardOpenOption.READ);
+      long end = length == null ? stat.size() : Math.min(stat.size(), offset + length);
+      return Optional.of(new FileObjectContent(channel, offset, end, stat));
+    } catch (IOException e) {
+      // Evicted between lookup and open, or deleted behind the cache's back; the entry
+      // is dropped only if no fill replaced it meanwhile
+      log.debug("Cached body of {} is gone: {}", fileName, e.getMessage());
+      cache.asMap().remove(fileName, entry);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Wraps a full download so that reading it to the end also stores it in the cache.
+   * Returns {@code body} unchanged when the object is too large, already cached or
+   * being filled by another request.
+   */
+  public InputStream fill(String fileName, StatObjectResponse stat, InputStream body) {
+    if (!config.isEnabled() || stat.etag() == null || stat.size() > config.getMaxObjectSize().toBytes()) {
+      return body;
+    }
+
+    Key key = key(fileName, stat);
+    Entry cached = cache.asMap().get(fileName);
+    if ((cached != null && cached.key().equals(key)) || !filling.add(key)) {
+      return body;
+    }
+
+    try {
+      Path tmp = Files.createTempFile(config.getDirectory(), "fill", FILL_SUFFIX);
+      return new FillingInputStream(body, key, tmp);
+    } catch (IOException e) {
+      filling.remove(key);
+      log.warn("Could not start caching {}: {}", fileName, e.getMessage());
+      return body;
+    }
+  }
+
+  /**
+   * Drops the cached body of the object.
+   */
+  public void evict(String fileName) {
+    cache.invalidate(fileName);
+  }
+
+  /**
+   * Drops the cached bodies of the objects.
+   */
+  public void evictAll(Collection<String> fileNames) {
+    cache.invalidateAll(fileNames);
+  }
+
+  private Key key(String fileName, StatObjectResponse stat) {
+    return new Key(fileName, stat.etag(), stat.size());
+  }
+
+  private Path newPathOf(Key key) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(key.fileName().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(key.etag().getBytes(StandardCharsets.UTF_8));
+      return config.getDirectory().resolve(
+          HexFormat.of().formatHex(digest.digest()) + "-" + UUID.randomUUID() + BODY_SUFFIX);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void delete(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Could not delete cached body {}: {}", file, e.getMessage());
+    }
+  }
+
+  private record Key(String fileName, String etag, long size) {
+  }
+
+  private record Entry(Key key, Path file) {
+  }
+
+  /**
+   * Copies everything read from MinIO into a temporary file and publishes it on close,
+   * provided the body was read completely.
+   */
+  private class FillingInputStream extends FilterInputStream {
+
+    private final Key key;
+    private final Path tmp;
+    private final OutputStream file;
+    private long written;
+    private boolean failed;
+
+    FillingInputStream(InputStream in, Key key, Path tmp) throws IOException {
+      super(in);
+      this.key = key;
+      this.tmp = tmp;
+      this.file = Files.newOutputStream(tmp);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        tee(new byte[]{(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        tee(b, off, read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      failed = true;
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        publish();
+      }
+    }
+
+    private void tee(byte[] b, int off, int len) {
+      if (failed) {
+        return;
+      }
+      try {
+        file.write(b, off, len);
+        written += len;
+      } catch (IOException e) {
+        failed = true;
+        log.warn("Could not cache {}: {}", key.fileName(), e.getMessage());
+      }
+    }
+
+    private void publish() {
+      try {
+        file.close();
+        if (!failed && written == key.size()) {
+          Path target = newPathOf(key);
+          Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+          Entry previous = cache.asMap().put(key.fileName(), new Entry(key, target));
+          if (previous != null) {
+            delete(previous.file());
+          }
+          return;
+        }
+      } catch (IOException e) {
+        log.warn("Could not cache {}: {}", key.fileName(), e.getMessage());
+      } finally {
+        filling.remove(key);
+      }
+      delete(tmp);
+    }
+  }
+}
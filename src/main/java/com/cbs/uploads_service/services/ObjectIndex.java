@@ -0,0 +1,391 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.FileSearchCriteria;
+import com.cbs.uploads_service.dto.IndexedObject;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.messages.Item;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process metadata index of the bucket, ordered by object key.
+ * <p>
+ * It is loaded from a local snapshot at startup, reconciled with a full bucket scan in
+ * the background and kept current by {@link MinioService} on every upload and delete.
+ * Searches are answered from memory once the index is ready. Listings are not: objects
+ * written around this service only show up here after the next rescan.
+ * <p>
+ * Deduplicated uploads also map their SHA-256 to the content blob holding it, see
+ * {@link ContentBlobs}; the blobs themselves are not indexed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ObjectIndex {
+
+  private static final int SNAPSHOT_VERSION = 3;
+
+  private final MinioClient client;
+  private final MinioConfig minioConfig;
+  private final UploadProperties uploadProperties;
+
+  private final ConcurrentSkipListMap<String, IndexedObject> entries = new ConcurrentSkipListMap<>();
+
+  /**
+   * Content blob of every SHA-256 referenced by an indexed object.
+   */
+  private final Map<String, String> blobsBySha256 = new ConcurrentHashMap<>();
+
+  /**
+   * Keys changed while a scan is running; the scan result must not overwrite them.
+   */
+  private final Set<String> touchedDuringScan = ConcurrentHashMap.newKeySet();
+
+  private volatile Instant lastScan;
+  private volatile boolean ready;
+  private volatile boolean scanning;
+  private volatile boolean dirty;
+
+  @PostConstruct
+  public void loadSnapshot() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    Path file = uploadProperties.getIndex().getSnapshotFile();
+    if (!Files.isRegularFile(file)) {
+      log.info("No object index snapshot at {}, waiting for the initial scan", file);
+      return;
+    }
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != SNAPSHOT_VERSION) {
+        log.warn("Ignoring object index snapshot {} with unknown version", file);
+        return;
+      }
+
+      lastScan = Instant.ofEpochMilli(in.readLong());
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        IndexedObject object = IndexedObject.builder()
+            .fileName(in.readUTF())
+            .size(in.readLong())
+            .contentType(in.readUTF())
+            .lastModified(ZonedDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneOffset.UTC))
+            .etag(in.readUTF())
+            .sha256(emptyToNull(in.readUTF()))
+            .contentKey(emptyToNull(in.readUTF()))
+            .codec(emptyToNull(in.readUTF()))
+            .build();
+        entries.put(object.getFileName(), object);
+        trackBlob(object);
+      }
+
+      ready = true;
+      log.info("Loaded {} objects from index snapshot {} (scanned at {})", count, file, lastScan);
+    } catch (IOException e) {
+      log.warn("Could not load object index snapshot {}: {}", file, e.getMessage());
+      entries.clear();
+      blobsBySha256.clear();
+    }
+  }
+
+  /**
+   * Starts a full scan when there is no snapshot or the last scan is older than
+   * {@code uploads.index.rescan-interval}, so a restart with a fresh snapshot skips it.
+   * Checked every {@code uploads.index.rescan-check-interval}.
+   */
+  @Scheduled(initialDelay = 0, fixedDelayString = "${uploads.index.rescan-check-interval:1m}")
+  public void rescanIfDue() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    Instant due = Instant.now().minus(uploadProperties.getIndex().getRescanInterval());
+    if (lastScan == null || lastScan.isBefore(due)) {
+      rescan();
+    }
+  }
+
+  /**
+   * Full bucket scan, reconciled into the live index. Keys uploaded or deleted while
+   * the scan runs keep the state recorded by {@link #put} / {@link #remove}.
+   */
+  public void rescan() {
+    long started = System.nanoTime();
+    touchedDuringScan.clear();
+    scanning = true;
+
+    try {
+      Map<String, IndexedObject> scanned = new HashMap<>();
+      Iterable<Result<Item>> results = client.listObjects(
+          ListObjectsArgs.builder()
+              .bucket(minioConfig.getBucketName())
+              .recursive(true)
+              .includeUserMetadata(true)
+              .build()
+      );
+
+      for (Result<Item> result : results) {
+        Item item = result.get();
+        if (!item.isDir() && !isBlob(item.objectName())) {
+          scanned.put(item.objectName(), fromItem(item));
+        }
+      }
+
+      for (IndexedObject object : scanned.values()) {
+        if (!touchedDuringScan.contains(object.getFileName())) {
+          entries.put(object.getFileName(), object);
+        }
+        trackBlob(object);
+      }
+      entries.keySet().removeIf(key -> !scanned.containsKey(key) && !touchedDuringScan.contains(key));
+
+      lastScan = Instant.now();
+      ready = true;
+      dirty = true;
+      log.info("Object index rebuilt with {} objects in {} ms",
+          entries.size(), (System.nanoTime() - started) / 1_000_000);
+    } catch (Exception e) {
+      log.error("Error scanning bucket for object index: {}", e.getMessage());
+    } finally {
+      scanning = false;
+      touchedDuringScan.clear();
+    }
+
+    saveSnapshot();
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  public void put(IndexedObject object) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (scanning) {
+      touchedDuringScan.add(object.getFileName());
+    }
+    entries.put(object.getFileName(), object);
+    trackBlob(object);
+    dirty = true;
+  }
+
+  public void remove(String fileName) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (scanning) {
+      touchedDuringScan.add(fileName);
+    }
+    entries.remove(fileName);
+    dirty = true;
+  }
+
+  /**
+   * The content blob known to hold content with this SHA-256.
+   */
+  public Optional<String> findBlob(String sha256) {
+    return Optional.ofNullable(blobsBySha256.get(sha256));
+  }
+
+  /**
+   * Forgets a content blob that has been deleted.
+   */
+  public void forgetBlob(String contentKey) {
+    blobsBySha256.values().removeIf(contentKey::equals);
+  }
+
+  public Optional<IndexedObject> get(String fileName) {
+    return Optional.ofNullable(entries.get(fileName));
+  }
+
+  /**
+   * Objects under {@code prefix} in key order, optionally starting after a key.
+   */
+  public Stream<IndexedObject> list(String prefix, String startAfter) {
+    ConcurrentNavigableMap<String, IndexedObject> view = entries;
+    if (prefix != null && !prefix.isEmpty()) {
+      view = view.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+    if (startAfter != null && !startAfter.isEmpty()) {
+      view = view.tailMap(startAfter, false);
+    }
+    return view.values().stream();
+  }
+
+  public List<IndexedObject> search(FileSearchCriteria criteria) {
+    MediaType contentType = criteria.getContentType() == null || criteria.getContentType().isBlank()
+        ? null
+        : MediaType.parseMediaType(criteria.getContentType());
+
+    return list(criteria.getPrefix(), null)
+        .filter(object -> criteria.getMinSize() == null || object.getSize() >= criteria.getMinSize())
+        .filter(object -> criteria.getMaxSize() == null || object.getSize() <= criteria.getMaxSize())
+        .filter(object -> criteria.getModifiedAfter() == null
+            || object.getLastModified().isAfter(criteria.getModifiedAfter()))
+        .filter(object -> criteria.getModifiedBefore() == null
+            || object.getLastModified().isBefore(criteria.getModifiedBefore()))
+        .filter(object -> contentType == null || matches(contentType, object.getContentType()))
+        .limit(criteria.getLimit())
+        .toList();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Scheduled(
+      initialDelayString = "${uploads.index.snapshot-interval:5m}",
+      fixedDelayString = "${uploads.index.snapshot-interval:5m}"
+  )
+  public void saveSnapshotIfDirty() {
+    if (dirty) {
+      saveSnapshot();
+    }
+  }
+
+  @PreDestroy
+  public void saveSnapshot() {
+    if (!isEnabled() || !ready) {
+      return;
+    }
+
+    Path file = uploadProperties.getIndex().getSnapshotFile().toAbsolutePath();
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+      dirty = false;
+      List<IndexedObject> objects = new ArrayList<>(entries.values());
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(lastScan == null ? 0 : lastScan.toEpochMilli());
+        out.writeInt(objects.size());
+        for (IndexedObject object : objects) {
+          out.writeUTF(object.getFileName());
+          out.writeLong(object.getSize());
+          out.writeUTF(nullToEmpty(object.getContentType()));
+          out.writeLong(object.getLastModified() == null ? 0 : object.getLastModified().toInstant().toEpochMilli());
+          out.writeUTF(nullToEmpty(object.getEtag()));
+          out.writeUTF(nullToEmpty(object.getSha256()));
+          out.writeUTF(nullToEmpty(object.getContentKey()));
+          out.writeUTF(nullToEmpty(object.getCodec()));
+        }
+      }
+
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.debug("Saved {} objects to index snapshot {}", objects.size(), file);
+    } catch (IOException e) {
+      dirty = true;
+      log.warn("Could not save object index snapshot {}: {}", file, e.getMessage());
+    }
+  }
+
+  private boolean isEnabled() {
+    return uploadProperties.getIndex().isEnabled();
+  }
+
+  private boolean isBlob(String key) {
+    return key.startsWith(uploadProperties.getDedup().getBlobPrefix());
+  }
+
+  private void trackBlob(IndexedObject object) {
+    if (object.getSha256() != null && object.getContentKey() != null) {
+      blobsBySha256.put(object.getSha256(), object.getContentKey());
+    }
+  }
+
+  private static IndexedObject fromItem(Item item) {
+    String sha256 = ContentBlobs.metadata(item.userMetadata(), ContentBlobs.SHA256);
+    String contentKey = ContentBlobs.metadata(item.userMetadata(), ContentBlobs.CONTENT_KEY);
+    String codec = ContentBlobs.metadata(item.userMetadata(), ObjectCompression.CODEC);
+    if (sha256 != null && contentKey != null) {
+      // A reference: its own body is empty, size and etag are those of the content
+      return IndexedObject.builder()
+          .fileName(item.objectName())
+          .size(ContentBlobs.size(item))
+          .contentType(contentType(item))
+          .lastModified(item.lastModified())
+          .etag(sha256)
+          .sha256(sha256)
+          .contentKey(contentKey)
+          .codec(codec)
+          .build();
+    }
+
+    return IndexedObject.builder()
+        .fileName(item.objectName())
+        .size(item.size())
+        .contentType(contentType(item))
+        .lastModified(item.lastModified())
+        .etag(unquote(item.etag()))
+        .codec(codec)
+        .build();
+  }
+
+  private static String contentType(Item item) {
+    Map<String, String> metadata = item.userMetadata();
+    if (metadata != null) {
+      for (Map.Entry<String, String> entry : metadata.entrySet()) {
+        if ("content-type".equalsIgnoreCase(entry.getKey())) {
+          return entry.getValue();
+        }
+      }
+    }
+    return MediaTypeFactory.getMediaType(item.objectName())
+        .orElse(MediaType.APPLICATION_OCTET_STREAM)
+        .toString();
+  }
+
+  private static boolean matches(MediaType wanted, String contentType) {
+    try {
+      return wanted.includes(MediaType.parseMediaType(contentType));
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  static String unquote(String etag) {
+    if (etag != null && etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+      return etag.substring(1, etag.length() - 1);
+    }
+    return etag;
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  private static String emptyToNull(String value) {
+    return value.isEmpty() ? null : value;
+  }
+}
@@ -0,0 +1,11 @@
+package com.cbs.uploads_service.services;
+
+/**
+ * Decides the object key an uploaded file is stored under. Used for server-side uploads,
+ * resumable uploads and presigned client uploads alike, so all of them share one layout.
+ * The default is {@link DefaultObjectKeyPolicy}; a {@code @Primary} bean replaces it.
+ */
+public interface ObjectKeyPolicy {
+
+  String objectKey(String originFileName, String dir);
+}
@@ -0,0 +1,21 @@
+package com.cbs.uploads_service.services;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request is shed because its bulkhead is full; answered with 429 and
+ * {@code Retry-After}.
+ */
+public class OverloadedException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public OverloadedException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,51 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.minio.http.Method;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of presigned URLs keyed by object, method and expiry.
+ * Entries are dropped well before the URL itself expires, so a cached URL
+ * handed out to a client always has a useful remaining lifetime.
+ * Hit/miss/eviction counts are published as {@code cache.*{cache="presigned-urls"}}.
+ */
+@Component
+public class PresignedUrlCache {
+
+  private final Cache<Key, String> cache;
+  private final Duration refreshBeforeExpiry;
+
+  public PresignedUrlCache(UploadProperties uploadProperties, MeterRegistry meterRegistry) {
+    UploadProperties.Presign presign = uploadProperties.getPresign();
+    this.refreshBeforeExpiry = presign.getRefreshBeforeExpiry();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(presign.getCacheMaxSize())
+        .expireAfter(Expiry.creating((Key key, String url) -> cacheLifetime(key.expiry())))
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "presigned-urls");
+  }
+
+  public String get(String object, Method method, Duration expiry, Supplier<String> signer) {
+    return cache.get(new Key(object, method, expiry), key -> signer.get());
+  }
+
+  private Duration cacheLifetime(Duration expiry) {
+    Duration half = expiry.dividedBy(2);
+    Duration margin = refreshBeforeExpiry.compareTo(half) > 0 ? half : refreshBeforeExpiry;
+    return expiry.minus(margin);
+  }
+
+  private record Key(String object, Method method, Duration expiry) {
+  }
+}
@@ -0,0 +1,81 @@
+package com.cbs.uploads_service.services;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A failure reading the body an upload is sent from, such as a client that went away
+ * or a stream that could not be compressed. It says nothing about MinIO, so
+ * {@link StorageResilience} neither retries it nor counts it against the circuit breaker.
+ */
+public class RequestBodyException extends IOException {
+
+  public RequestBodyException(IOException cause) {
+    super("Error reading request body: " + cause.getMessage(), cause);
+  }
+
+  /**
+   * Wraps an upload body so that its read errors surface as this exception.
+   */
+  public static InputStream guard(InputStream body) {
+    return new FilterInputStream(body) {
+
+      @Override
+      public int read() throws IOException {
+        try {
+          return super.read();
+        } catch (RequestBodyException e) {
+          throw e;
+        } catch (IOException e) {
+          throw new RequestBodyException(e);
+        }
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        try {
+          return super.read(b, off, len);
+        } catch (RequestBodyException e) {
+          throw e;
+        } catch (IOException e) {
+          throw new RequestBodyException(e);
+        }
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        try {
+          return super.skip(n);
+        } catch (RequestBodyException e) {
+          throw e;
+        } catch (IOException e) {
+          throw new RequestBodyException(e);
+        }
+      }
+
+      @Override
+      public int available() throws IOException {
+        try {
+          return super.available();
+        } catch (RequestBodyException e) {
+          throw e;
+        } catch (IOException e) {
+          throw new RequestBodyException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Whether this exception is among the causes of {@code ex}.
+   */
+  public static boolean isCause(Throwable ex) {
+    for (Throwable e = ex; e != null; e = e.getCause() == e ? null : e.getCause()) {
+      if (e instanceof RequestBodyException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
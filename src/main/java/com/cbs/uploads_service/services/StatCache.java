@@ -0,0 +1,68 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.minio.StatObjectResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded, short-lived cache of {@code statObject} results. Missing keys are cached
+ * as empty for a shorter time. {@link MinioService} invalidates entries on every
+ * write and delete, so the TTL only bounds staleness for changes made elsewhere.
+ */
+@Component
+public class StatCache {
+
+  private final Cache<String, Optional<StatObjectResponse>> cache;
+
+  public StatCache(UploadProperties uploadProperties, MeterRegistry meterRegistry) {
+    UploadProperties.StatCache config = uploadProperties.getStatCache();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(config.getMaxSize())
+        .expireAfter(Expiry.creating((String key, Optional<StatObjectResponse> stat) ->
+            stat.isPresent() ? config.getTtl() : config.getNegativeTtl()))
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "object-stats");
+  }
+
+  public Optional<StatObjectResponse> get(String fileName, Function<String, Optional<StatObjectResponse>> loader) {
+    return cache.get(fileName, loader);
+  }
+
+  /**
+   * The cached stat of an existing object, without loading it or counting a miss.
+   */
+  public Optional<StatObjectResponse> peek(String fileName) {
+    Optional<StatObjectResponse> stat = cache.policy().getIfPresentQuietly(fileName);
+    return stat == null ? Optional.empty() : stat;
+  }
+
+  /**
+   * The cached result, or null when the key has to be loaded. For callers that load
+   * asynchronously and {@link #put(String, Optional)} the result themselves.
+   */
+  public Optional<StatObjectResponse> getIfPresent(String fileName) {
+    return cache.getIfPresent(fileName);
+  }
+
+  public void put(String fileName, StatObjectResponse stat) {
+    cache.put(fileName, Optional.of(stat));
+  }
+
+  public void put(String fileName, Optional<StatObjectResponse> stat) {
+    cache.put(fileName, stat);
+  }
+
+  public void invalidate(String fileName) {
+    cache.invalidate(fileName);
+  }
+}
@@ -0,0 +1,167 @@
+package com.cbs.uploads_service.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.minio.errors.ErrorResponseException;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of the storage operations {@link MinioService} performs against MinIO:
+ * <ul>
+ *   <li>{@code minio.requests{operation,outcome}} - latency, with a percentile histogram</li>
+ *   <li>{@code minio.requests.active{operation}} - calls in flight</li>
+ *   <li>{@code minio.errors{operation,code}} - failures by MinIO error code, or exception type</li>
+ *   <li>{@code minio.bytes{direction=upload|download}} - bytes transferred</li>
+ *   <li>{@code minio.object.size{operation=upload|download}} - object size distribution</li>
+ * </ul>
+ * Latencies of successful calls also drive the adaptive {@link Bulkheads}.
+ */
+@Component
+public class StorageMetrics {
+
+  private final MeterRegistry registry;
+  private final Bulkheads bulkheads;
+  private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+  public StorageMetrics(MeterRegistry registry, Bulkheads bulkheads) {
+    this.registry = registry;
+    this.bulkheads = bulkheads;
+  }
+
+  public Call start(String operation) {
+    AtomicInteger inFlight = active.computeIfAbsent(operation, op -> registry.gauge(
+        "minio.requests.active", Tags.of("operation", op), new AtomicInteger()));
+    inFlight.incrementAndGet();
+    return new Call(operation, inFlight, Timer.start(registry));
+  }
+
+  public void uploaded(long bytes) {
+    bytes("upload").increment(bytes);
+    size("upload").record(bytes);
+  }
+
+  /**
+   * Counts the bytes of a download as they are read; the object size is recorded on close.
+   */
+  public InputStream countDownload(InputStream body) {
+    return new FilterInputStream(body) {
+      private long read;
+
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+          read++;
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+          read += n;
+        }
+        return n;
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          bytes("download").increment(read);
+          size("download").record(read);
+        }
+      }
+    };
+  }
+
+  private Counter bytes(String direction) {
+    return Counter.builder("minio.bytes")
+        .description("Bytes transferred to and from MinIO")
+        .baseUnit("bytes")
+        .tag("direction", direction)
+        .register(registry);
+  }
+
+  private DistributionSummary size(String operation) {
+    return DistributionSummary.builder("minio.object.size")
+        .description("Size of uploaded and downloaded objects")
+        .baseUnit("bytes")
+        .tag("operation", operation)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  private static String errorCode(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ErrorResponseException ere && ere.errorResponse() != null) {
+        return ere.errorResponse().code();
+      }
+    }
+    Throwable root = e.getCause() != null ? e.getCause() : e;
+    return root.getClass().getSimpleName();
+  }
+
+  /**
+   * One timed storage call. Only the first {@link #success()} or {@link #failure} counts.
+   */
+  public final class Call {
+
+    private final String operation;
+    private final AtomicInteger inFlight;
+    private final Timer.Sample sample;
+    private boolean done;
+
+    private Call(String operation, AtomicInteger inFlight, Timer.Sample sample) {
+      this.operation = operation;
+      this.inFlight = inFlight;
+      this.sample = sample;
+    }
+
+    public void success() {
+      finish("success");
+    }
+
+    public void failure(Throwable e) {
+      if (finish("error")) {
+        Counter.builder("minio.errors")
+            .description("Failed MinIO calls")
+            .tag("operation", operation)
+            .tag("code", errorCode(e))
+            .register(registry)
+            .increment();
+      }
+    }
+
+    private boolean finish(String outcome) {
+      if (done) {
+        return false;
+      }
+      done = true;
+      inFlight.decrementAndGet();
+      long latency = sample.stop(Timer.builder("minio.requests")
+          .description("Latency of MinIO calls")
+          .tag("operation", operation)
+          .tag("outcome", outcome)
+          .publishPercentileHistogram()
+          .register(registry));
+      if ("success".equals(outcome)) {
+        bulkheads.observe(operation, latency, TimeUnit.NANOSECONDS);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.utils.Futures;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.ServerException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Guards the MinIO calls of {@link MinioService}:
+ * <ul>
+ *   <li>Idempotent calls that fail with a network error or a 5xx are retried up to
+ *   {@code uploads.resilience.max-attempts} times, after a random wait below an
+ *   exponentially growing backoff so retries of many clients do not line up.</li>
+ *   <li>A {@link CircuitBreaker} fails calls fast with {@link StorageUnavailableException}
+ *   while most recent calls failed, instead of letting every request wait for MinIO
+ *   timeouts during an outage. Answers such as NoSuchKey count as successes, and a
+ *   {@link RequestBodyException} counts as neither, since a client dropping its upload
+ *   says nothing about MinIO.</li>
+ *   <li>Stats and GetObjects are hedged: when the first request has not answered
+ *   within the configured latency percentile of recent calls, a second one is sent and
+ *   the first answer wins, which cuts the tail added by a slow MinIO node. Hedges are
+ *   limited to a share of all calls.</li>
+ * </ul>
+ * Published as {@code minio.retries{operation}}, {@code minio.hedges{operation}},
+ * {@code minio.hedges.won{operation}}, {@code minio.circuit.state} (0 closed, 1 half-open,
+ * 2 open) and {@code minio.circuit.rejected}.
+ */
+@Slf4j
+@Component
+public class StorageResilience {
+
+  private static final Set<String> TRANSIENT_CODES = Set.of(
+      "InternalError", "ServiceUnavailable", "SlowDown", "RequestTimeout", "XMinioServerNotInitialized");
+  private static final int LATENCY_SAMPLES = 256;
+  private static final int HEDGE_COST = 1000;
+  private static final int MAX_HEDGE_CREDIT = 10 * HEDGE_COST;
+
+  private final UploadProperties.Resilience config;
+  private final CircuitBreaker breaker;
+  private final MeterRegistry meterRegistry;
+  private final Counter rejected;
+  private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+  private final AtomicLong hedgeCredit = new AtomicLong();
+
+  public StorageResilience(UploadProperties uploadProperties, MeterRegistry meterRegistry) {
+    this.config = uploadProperties.getResilience();
+    UploadProperties.Resilience.Breaker breakerConfig = config.getBreaker();
+    this.breaker = new CircuitBreaker("minio", breakerConfig.getWindowSize(), breakerConfig.getMinimumCalls(),
+        breakerConfig.getFailureRateThreshold(), breakerConfig.getOpenDuration(), breakerConfig.getHalfOpenCalls());
+    this.meterRegistry = meterRegistry;
+
+    Gauge.builder("minio.circuit.state", breaker, b -> b.state().ordinal())
+        .description("State of the MinIO circuit breaker: 0 closed, 1 half-open, 2 open")
+        .register(meterRegistry);
+    this.rejected = Counter.builder("minio.circuit.rejected")
+        .description("Calls failed fast while the circuit breaker was open")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Runs an idempotent call on the calling thread, retrying transient failures.
+   */
+  public <T> T call(String operation, Callable<T> call) throws Exception {
+    int attempts = config.isEnabled() ? Math.max(1, config.getMaxAttempts()) : 1;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return attempt(call);
+      } catch (Exception e) {
+        if (attempt >= attempts || !isTransient(e)) {
+          throw e;
+        }
+        retrying(operation, attempt, e);
+        try {
+          TimeUnit.NANOSECONDS.sleep(backoffNanos(attempt));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs a call that must not be repeated, such as an upload whose stream is consumed,
+   * through the circuit breaker only.
+   */
+  public <T> T once(Callable<T> call) throws Exception {
+    return attempt(call);
+  }
+
+  /**
+   * Like {@link #call}, for a call of the MinIO async client; retries wait without
+   * holding a thread.
+   */
+  public <T> CompletableFuture<T> callAsync(String operation, Futures.Call<T> call) {
+    return attemptAsync(operation, call, 1);
+  }
+
+  /**
+   * Like {@link #callAsync}, sending the call a second time when it is slow. The answer
+   * that loses the race, if any, is handed to {@code discard} so it can be closed.
+   */
+  public <T> CompletableFuture<T> hedged(String operation, Futures.Call<T> call, Consumer<T> discard) {
+    UploadProperties.Resilience.Hedging hedging = config.getHedging();
+    if (!config.isEnabled() || !hedging.isEnabled()) {
+      return callAsync(operation, call);
+    }
+
+    LatencyWindow window = latencies.computeIfAbsent(operation,
+        op -> new LatencyWindow(hedging.getPercentile(), hedging.getMinSamples()));
+    long earned = (long) (hedging.getBudget() * HEDGE_COST);
+    hedgeCredit.updateAndGet(credit -> Math.min(MAX_HEDGE_CREDIT, credit + earned));
+
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger pending = new AtomicInteger(1);
+    timed(operation, call, window).whenComplete((value, ex) -> settle(result, pending, value, ex, discard, null));
+
+    long delay = window.percentile();
+    if (delay >= 0) {
+      delay = Math.max(delay, hedging.getMinDelay().toNanos());
+      CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+        if (result.isDone() || breaker.state() != CircuitBreaker.State.CLOSED || !takeHedgeCredit()) {
+          return;
+        }
+        pending.incrementAndGet();
+        counter("minio.hedges", operation).increment();
+        timed(operation, call, window).whenComplete((value, ex) ->
+            settle(result, pending, value, ex, discard, () -> counter("minio.hedges.won", operation).increment()));
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Waits for a future of the async client and rethrows what it failed with, so
+   * blocking callers can handle MinIO exceptions as with the blocking client.
+   */
+  public static <T> T await(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.join();
+    } catch (RuntimeException e) {
+      Throwable cause = Futures.cause(e);
+      if (cause instanceof Exception exception) {
+        throw exception;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Failures that another attempt may not run into: network errors, 5xx answers and
+   * the S3 error codes asking to slow down or retry. Errors reading an upload body are
+   * the client's, not MinIO's.
+   */
+  public static boolean isTransient(Throwable ex) {
+    if (RequestBodyException.isCause(ex)) {
+      return false;
+    }
+    for (Throwable e = Futures.cause(ex); e != null; e = e.getCause() == e ? null : e.getCause()) {
+      if (e instanceof IOException || e instanceof ServerException) {
+        return true;
+      }
+      if (e instanceof ErrorResponseException error) {
+        return (error.errorResponse() != null && TRANSIENT_CODES.contains(error.errorResponse().code()))
+            || (error.response() != null && error.response().code() >= 500);
+      }
+    }
+    return false;
+  }
+
+  private <T> T attempt(Callable<T> call) throws Exception {
+    acquire();
+    try {
+      T value = call.call();
+      outcome(null);
+      return value;
+    } catch (Exception e) {
+      outcome(e);
+      throw e;
+    }
+  }
+
+  private <T> CompletableFuture<T> attemptAsync(String operation, Futures.Call<T> call, int attempt) {
+    try {
+      acquire();
+    } catch (StorageUnavailableException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    int attempts = config.isEnabled() ? Math.max(1, config.getMaxAttempts()) : 1;
+    return Futures.start(call)
+        .handle((value, ex) -> {
+          Throwable cause = ex == null ? null : Futures.cause(ex);
+          outcome(cause);
+          if (cause == null) {
+            return CompletableFuture.completedFuture(value);
+          }
+          if (attempt >= attempts || !isTransient(cause)) {
+            return CompletableFuture.<T>failedFuture(cause);
+          }
+          retrying(operation, attempt, cause);
+          return CompletableFuture
+              .runAsync(() -> {
+              }, CompletableFuture.delayedExecutor(backoffNanos(attempt), TimeUnit.NANOSECONDS))
+              .thenCompose(ignored -> attemptAsync(operation, call, attempt + 1));
+        })
+        .thenCompose(Function.identity());
+  }
+
+  private <T> CompletableFuture<T> timed(String operation, Futures.Call<T> call, LatencyWindow window) {
+    long start = System.nanoTime();
+    return callAsync(operation, call).whenComplete((value, ex) -> {
+      if (ex == null) {
+        window.record(System.nanoTime() - start);
+      }
+    });
+  }
+
+  /**
+   * Completes the hedged result with the first success, or with the first failure that
+   * another attempt would run into as well; a transient failure waits for the other
+   * attempt while there is one.
+   */
+  private static <T> void settle(
+      CompletableFuture<T> result, AtomicInteger pending, T value, Throwable ex, Consumer<T> discard, Runnable won
+  ) {
+    int left = pending.decrementAndGet();
+    if (ex == null) {
+      if (result.complete(value)) {
+        if (won != null) {
+          won.run();
+        }
+      } else if (discard != null) {
+        discard.accept(value);
+      }
+    } else if (left == 0 || !isTransient(ex)) {
+      result.completeExceptionally(Futures.cause(ex));
+    }
+  }
+
+  private void acquire() {
+    if (!config.isEnabled() || !config.getBreaker().isEnabled()) {
+      return;
+    }
+    try {
+      breaker.acquire();
+    } catch (StorageUnavailableException e) {
+      rejected.increment();
+      throw e;
+    }
+  }
+
+  private void outcome(Throwable failure) {
+    if (!config.isEnabled() || !config.getBreaker().isEnabled()) {
+      return;
+    }
+    if (failure != null && RequestBodyException.isCause(failure)) {
+      breaker.release();
+      return;
+    }
+    // An error answer still means MinIO is up
+    if (failure != null && isTransient(failure)) {
+      breaker.onFailure();
+    } else {
+      breaker.onSuccess();
+    }
+  }
+
+  private boolean takeHedgeCredit() {
+    return hedgeCredit.getAndUpdate(credit -> credit >= HEDGE_COST ? credit - HEDGE_COST : credit) >= HEDGE_COST;
+  }
+
+  /**
+   * Full jitter: a random wait below the exponential backoff of this attempt.
+   */
+  private long backoffNanos(int attempt) {
+    long initial = config.getInitialBackoff().toNanos();
+    long cap = Math.min(config.getMaxBackoff().toNanos(), initial << Math.min(attempt - 1, 20));
+    return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+  }
+
+  private void retrying(String operation, int attempt, Throwable e) {
+    counter("minio.retries", operation).increment();
+    log.debug("Retrying {} after attempt {} failed: {}", operation, attempt, e.getMessage());
+  }
+
+  private Counter counter(String name, String operation) {
+    return Counter.builder(name).tag("operation", operation).register(meterRegistry);
+  }
+
+  CircuitBreaker.State circuitState() {
+    return breaker.state();
+  }
+
+  /**
+   * The latencies of the most recent successful calls of one kind, with the configured
+   * percentile recomputed every few samples.
+   */
+  private static final class LatencyWindow {
+
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final long[] samples = new long[LATENCY_SAMPLES];
+    private final double percentile;
+    private final int minSamples;
+    private int count;
+    private int next;
+    private volatile long value = -1;
+
+    LatencyWindow(double percentile, int minSamples) {
+      this.percentile = Math.max(0, Math.min(1, percentile));
+      this.minSamples = Math.max(1, Math.min(minSamples, LATENCY_SAMPLES));
+    }
+
+    synchronized void record(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+      if (count >= minSamples && (value < 0 || next % RECOMPUTE_EVERY == 0)) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        value = sorted[Math.max(0, Math.min(count - 1, index))];
+      }
+    }
+
+    /**
+     * Nanoseconds, or -1 while there are too few samples.
+     */
+    long percentile() {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.cbs.uploads_service.services;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of calling MinIO while its circuit breaker is open; answered with 503
+ * and {@code Retry-After}.
+ */
+public class StorageUnavailableException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public StorageUnavailableException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  /**
+   * This exception among the causes of {@code ex}, which storage errors are usually
+   * wrapped in, or null.
+   */
+  public static StorageUnavailableException find(Throwable ex) {
+    for (Throwable e = ex; e != null; e = e.getCause() == e ? null : e.getCause()) {
+      if (e instanceof StorageUnavailableException unavailable) {
+        return unavailable;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,53 @@
+package com.cbs.uploads_service.services;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Thrown when a streamed upload body is larger than {@code uploads.streaming.max-size};
+ * answered with 413.
+ */
+public class UploadTooLargeException extends IOException {
+
+  private final long maxSize;
+
+  public UploadTooLargeException(long maxSize) {
+    super("Upload exceeds the maximum size of " + DataSize.ofBytes(maxSize));
+    this.maxSize = maxSize;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Wraps an upload body so that reading past {@code maxSize} bytes fails with this
+   * exception instead of passing more bytes on.
+   */
+  public static InputStream limit(InputStream body, long maxSize) throws IOException {
+    // One byte over the limit tells a body that is too large from one that ends at it
+    return BoundedInputStream.builder()
+        .setInputStream(body)
+        .setMaxCount(maxSize + 1)
+        .setOnMaxCount((max, count) -> {
+          throw new UploadTooLargeException(maxSize);
+        })
+        .get();
+  }
+
+  /**
+   * This exception among the causes of {@code ex}, which upload errors are usually
+   * wrapped in, or null.
+   */
+  public static UploadTooLargeException find(Throwable ex) {
+    for (Throwable e = ex; e != null; e = e.getCause() == e ? null : e.getCause()) {
+      if (e instanceof UploadTooLargeException tooLarge) {
+        return tooLarge;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,97 @@
+package com.cbs.uploads_service.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses a stream while it is being read. Source chunks are pushed through an
+ * {@link OutputStream} codec into a small buffer that reads are served from, so an
+ * upload can be compressed on its way to MinIO without a pipe or an extra thread.
+ */
+public class CompressingInputStream extends InputStream {
+
+  private final InputStream source;
+  private final Buffer buffer = new Buffer();
+  private final OutputStream codec;
+  private final byte[] chunk = new byte[Streams.BUFFER_SIZE / 8];
+  private int position;
+  private boolean finished;
+
+  public CompressingInputStream(InputStream source, Codec codec) throws IOException {
+    this.source = source;
+    this.codec = codec.wrap(buffer);
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (position == buffer.size()) {
+      if (finished) {
+        return -1;
+      }
+      buffer.reset();
+      position = 0;
+
+      int read = source.read(chunk);
+      if (read == -1) {
+        // Writes the trailer of the format into the buffer
+        codec.close();
+        finished = true;
+      } else {
+        codec.write(chunk, 0, read);
+      }
+    }
+
+    int n = Math.min(len, buffer.size() - position);
+    System.arraycopy(buffer.array(), position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return buffer.size() - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      source.close();
+    } finally {
+      if (!finished) {
+        // Releases the codec, e.g. native zstd contexts
+        finished = true;
+        codec.close();
+      }
+    }
+  }
+
+  /**
+   * Wraps the sink with a compressing stream, e.g. {@code GZIPOutputStream::new}.
+   */
+  @FunctionalInterface
+  public interface Codec {
+    OutputStream wrap(OutputStream out) throws IOException;
+  }
+
+  private static final class Buffer extends ByteArrayOutputStream {
+
+    Buffer() {
+      super(Streams.BUFFER_SIZE / 4);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+  }
+}
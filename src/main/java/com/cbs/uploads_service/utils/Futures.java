@@ -0,0 +1,53 @@
+package com.cbs.uploads_service.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for the {@link CompletableFuture}s of the non-blocking request path.
+ */
+public final class Futures {
+
+  private Futures() {
+  }
+
+  /**
+   * Starts a call that may fail before it returns its future, such as the MinIO async
+   * client's, and turns that failure into a failed future.
+   */
+  public static <T> CompletableFuture<T> start(Call<T> call) {
+    try {
+      return call.start();
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Runs a blocking call on the calling thread and returns its outcome as a completed future.
+   */
+  public static <T> CompletableFuture<T> inline(Supplier<T> call) {
+    try {
+      return CompletableFuture.completedFuture(call.get());
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * The exception a future failed with, without the wrapper added by dependent stages.
+   */
+  public static Throwable cause(Throwable ex) {
+    while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+      ex = ex.getCause();
+    }
+    return ex;
+  }
+
+  @FunctionalInterface
+  public interface Call<T> {
+    CompletableFuture<T> start() throws Exception;
+  }
+}
@@ -0,0 +1,32 @@
+package com.cbs.uploads_service.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream copy helpers for the download path.
+ * Each thread reuses a single fixed-size buffer, so the heap cost of a download
+ * does not depend on the size of the object.
+ */
+public final class Streams {
+
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+  private Streams() {
+  }
+
+  public static long copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = BUFFER.get();
+    long total = 0;
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      total += read;
+    }
+    out.flush();
+    return total;
+  }
+}
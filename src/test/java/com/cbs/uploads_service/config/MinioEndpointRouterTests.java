@@ -0,0 +1,79 @@
+package com.cbs.uploads_service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinioEndpointRouterTests {
+
+  private final MinioConfig.Routing routing = new MinioConfig.Routing();
+
+  @Test
+  void prefersNodeWithLessOutstandingWork() {
+    MinioEndpointRouter router = router("http://node1:9000", "http://node2:9000");
+    MinioEndpointRouter.Node busy = router.nodes().get(0);
+    MinioEndpointRouter.Node idle = router.nodes().get(1);
+    busy.observe(1_000_000);
+    idle.observe(1_000_000);
+    busy.outstanding.set(10);
+
+    for (int i = 0; i < 20; i++) {
+      assertThat(router.choose(null)).isSameAs(idle);
+    }
+    assertThat(router.choose(idle)).isSameAs(busy);
+  }
+
+  @Test
+  void ejectsNodeAfterConsecutiveFailures() {
+    routing.setFailureThreshold(3);
+    MinioEndpointRouter router = router("http://node1:9000", "http://node2:9000");
+    MinioEndpointRouter.Node failing = router.nodes().get(0);
+
+    router.record(failing, 1_000_000, false);
+    router.record(failing, 1_000_000, false);
+    router.record(failing, 1_000_000, true);
+    router.record(failing, 1_000_000, false);
+    router.record(failing, 1_000_000, false);
+    assertThat(failing.isAvailable(System.nanoTime())).isTrue();
+
+    router.record(failing, 1_000_000, false);
+    assertThat(failing.isAvailable(System.nanoTime())).isFalse();
+    for (int i = 0; i < 20; i++) {
+      assertThat(router.choose(null)).isSameAs(router.nodes().get(1));
+    }
+  }
+
+  @Test
+  void healthChecksTakeNodeOutAndBringItBack() {
+    MinioEndpointRouter router = router("http://node1:9000", "http://node2:9000");
+    MinioEndpointRouter.Node node = router.nodes().get(0);
+
+    router.checked(node, false);
+    assertThat(node.isAvailable(System.nanoTime())).isTrue();
+    router.checked(node, false);
+    assertThat(node.isAvailable(System.nanoTime())).isFalse();
+
+    router.checked(node, true);
+    assertThat(node.isAvailable(System.nanoTime())).isFalse();
+    router.checked(node, true);
+    assertThat(node.isAvailable(System.nanoTime())).isTrue();
+  }
+
+  @Test
+  void usesAllNodesWhenNoneIsAvailable() {
+    MinioEndpointRouter router = router("http://node1:9000");
+    MinioEndpointRouter.Node node = router.nodes().get(0);
+    router.checked(node, false);
+    router.checked(node, false);
+
+    assertThat(router.choose(null)).isSameAs(node);
+    assertThat(router.choose(node)).isNull();
+  }
+
+  private MinioEndpointRouter router(String... endpoints) {
+    return new MinioEndpointRouter(List.of(endpoints), routing, new SimpleMeterRegistry());
+  }
+}
@@ -0,0 +1,239 @@
+package com.cbs.uploads_service.controllers;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.services.MinioService;
+import com.cbs.uploads_service.services.ObjectContent;
+import io.minio.StatObjectResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ObjectResponseWriterTests {
+
+  private static final String PATH = "202601/report.pdf";
+  private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+  private MinioService service;
+  private ObjectResponseWriter writer;
+
+  @BeforeEach
+  void setUp() {
+    service = mock(MinioService.class);
+    UploadProperties properties = new UploadProperties();
+    UploadProperties.CacheControl.Rule rule = new UploadProperties.CacheControl.Rule();
+    rule.setPattern("(.+/)?\\d{6}/");
+    rule.setPolicy("public, max-age=86400");
+    properties.getCacheControl().getRules().add(rule);
+    writer = new ObjectResponseWriter(service, properties);
+
+    StatObjectResponse stat = mock(StatObjectResponse.class);
+    when(stat.size()).thenReturn((long) CONTENT.length);
+    when(stat.contentType()).thenReturn("application/pdf");
+    when(stat.etag()).thenReturn("abc");
+    when(stat.lastModified()).thenReturn(ZonedDateTime.parse("2026-01-10T10:00:00Z"));
+    when(service.getFileInfoAsync(PATH)).thenReturn(CompletableFuture.completedFuture(stat));
+    when(service.openStoredAsync(PATH)).thenAnswer(inv -> CompletableFuture.completedFuture(
+        new ObjectContent(new ByteArrayInputStream(CONTENT), stat)));
+    when(service.downloadFile(eq(PATH), anyLong(), any())).thenAnswer(inv -> {
+      long offset = inv.getArgument(1);
+      long length = inv.<Long>getArgument(2);
+      return new ByteArrayInputStream(CONTENT, (int) offset, (int) length);
+    });
+    when(service.downloadFileAsync(eq(PATH), anyLong(), any())).thenAnswer(inv -> CompletableFuture.completedFuture(
+        service.downloadFile(PATH, inv.getArgument(1), inv.getArgument(2))));
+  }
+
+  @Test
+  void servesFullObjectWithoutRange() throws Exception {
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, new HttpHeaders(), h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(res.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+    assertThat(body(res)).isEqualTo("0123456789");
+    verify(service, never()).getFileInfoAsync(PATH);
+  }
+
+  @Test
+  void answersMatchingEtagWithNotModified() {
+    HttpHeaders request = new HttpHeaders();
+    request.setIfNoneMatch("\"abc\"");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(res.getHeaders().getETag()).isEqualTo("\"abc\"");
+    assertThat(res.getHeaders().getCacheControl()).isEqualTo("public, max-age=86400");
+    verify(service, never()).openStoredAsync(PATH);
+  }
+
+  @Test
+  void servesChangedObjectDespiteIfModifiedSince() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.setIfModifiedSince(ZonedDateTime.parse("2026-01-01T00:00:00Z"));
+    StatObjectResponse stat = service.getFileInfoAsync(PATH).join();
+    when(service.getFileInfoAsync("misc/readme.txt")).thenReturn(CompletableFuture.completedFuture(stat));
+    when(service.openStoredAsync("misc/readme.txt")).thenAnswer(inv -> CompletableFuture.completedFuture(
+        new ObjectContent(new ByteArrayInputStream(CONTENT), stat)));
+
+    ResponseEntity<StreamingResponseBody> res = writer.write("misc/readme.txt", request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(res.getHeaders().getCacheControl()).isEqualTo("no-cache");
+  }
+
+  @Test
+  void servesSingleRangeFromRangedGet() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=2-5");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+    assertThat(res.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+    assertThat(res.getHeaders().getContentLength()).isEqualTo(4);
+    assertThat(body(res)).isEqualTo("2345");
+    verify(service).downloadFileAsync(PATH, 2L, 4L);
+  }
+
+  @Test
+  void failsSingleRangeBeforeCommittingWhenObjectCannotBeOpened() {
+    when(service.downloadFileAsync(eq(PATH), anyLong(), any())).thenReturn(
+        CompletableFuture.failedFuture(new RuntimeException("Error downloading file: NoSuchKey")));
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=2-5");
+
+    CompletableFuture<ResponseEntity<StreamingResponseBody>> res = writer.write(PATH, request, h -> { });
+
+    assertThat(res).isCompletedExceptionally();
+  }
+
+  @Test
+  void servesMultipleRangesAsByteranges() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=0-1,-2");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+    assertThat(res.getHeaders().getContentType().toString()).startsWith("multipart/byteranges");
+    String body = body(res);
+    assertThat(body).contains("Content-Range: bytes 0-1/10\r\n\r\n01");
+    assertThat(body).contains("Content-Range: bytes 8-9/10\r\n\r\n89");
+  }
+
+  @Test
+  void coalescesOverlappingAndAdjacentRanges() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=6-7,0-1,1-2,3-3");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    String body = body(res);
+    assertThat(body).contains("Content-Range: bytes 0-3/10\r\n\r\n0123");
+    assertThat(body).contains("Content-Range: bytes 6-7/10\r\n\r\n67");
+    verify(service, times(2)).downloadFile(eq(PATH), anyLong(), any());
+  }
+
+  @Test
+  void servesWholeObjectWhenRangesCoverIt() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=0-5,4-9");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(body(res)).isEqualTo("0123456789");
+    verify(service, never()).downloadFile(eq(PATH), anyLong(), any());
+  }
+
+  @Test
+  void ignoresRangeWhenIfRangeDoesNotMatch() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=2-5");
+    request.set(HttpHeaders.IF_RANGE, "\"other\"");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(body(res)).isEqualTo("0123456789");
+  }
+
+  @Test
+  void rejectsUnsatisfiableRange() {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=20-30");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    assertThat(res.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+  }
+
+  @Test
+  void ignoresInvalidRange() throws Exception {
+    HttpHeaders request = new HttpHeaders();
+    request.set(HttpHeaders.RANGE, "bytes=5-2");
+
+    ResponseEntity<StreamingResponseBody> res = writer.write(PATH, request, h -> { }).join();
+
+    assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(body(res)).isEqualTo("0123456789");
+  }
+
+  @Test
+  void negotiatesEncodingOfCompressedObject() throws Exception {
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write(CONTENT);
+    }
+    StatObjectResponse stat = mock(StatObjectResponse.class);
+    when(stat.size()).thenReturn((long) gzipped.size());
+    when(stat.contentType()).thenReturn("text/csv");
+    when(stat.etag()).thenReturn("abc");
+    when(stat.userMetadata()).thenReturn(Map.of("content-codec", "gzip"));
+    when(service.getFileInfoAsync("data.csv")).thenReturn(CompletableFuture.completedFuture(stat));
+    when(service.openStoredAsync("data.csv")).thenAnswer(inv -> CompletableFuture.completedFuture(
+        new ObjectContent(new ByteArrayInputStream(gzipped.toByteArray()), stat)));
+
+    HttpHeaders accepting = new HttpHeaders();
+    accepting.set(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+    accepting.set(HttpHeaders.RANGE, "bytes=2-5");
+    ResponseEntity<StreamingResponseBody> encoded = writer.write("data.csv", accepting, h -> { }).join();
+
+    assertThat(encoded.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(encoded.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(encoded.getHeaders().getContentLength()).isEqualTo(gzipped.size());
+    assertThat(encoded.getHeaders().getETag()).isEqualTo("\"abc\"");
+    assertThat(encoded.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+
+    HttpHeaders refusing = new HttpHeaders();
+    refusing.set(HttpHeaders.ACCEPT_ENCODING, "identity, gzip;q=0");
+    ResponseEntity<StreamingResponseBody> decoded = writer.write("data.csv", refusing, h -> { }).join();
+
+    assertThat(decoded.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(decoded.getHeaders().getETag()).isEqualTo("W/\"abc\"");
+    assertThat(body(decoded)).isEqualTo("0123456789");
+  }
+
+  private static String body(ResponseEntity<StreamingResponseBody> res) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    res.getBody().writeTo(out);
+    return out.toString(StandardCharsets.US_ASCII);
+  }
+}
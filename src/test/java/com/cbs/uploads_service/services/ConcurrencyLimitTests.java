@@ -0,0 +1,68 @@
+package com.cbs.uploads_service.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyLimitTests {
+
+  @Test
+  void shedsBeyondLimitAndQueue() {
+    ConcurrencyLimit limit = new ConcurrencyLimit("upload", 1, 2, 0, Duration.ZERO, Duration.ofSeconds(3), false, 2.0);
+    ConcurrencyLimit.Permit first = limit.acquire();
+    limit.acquire();
+
+    assertThatThrownBy(limit::acquire)
+        .isInstanceOf(OverloadedException.class)
+        .satisfies(e -> assertThat(((OverloadedException) e).getRetryAfter()).isEqualTo(Duration.ofSeconds(3)));
+
+    first.release();
+    first.release();
+    assertThat(limit.inFlight()).isEqualTo(1);
+    limit.acquire();
+  }
+
+  @Test
+  void queuedRequestGetsReleasedSlot() throws Exception {
+    ConcurrencyLimit limit = new ConcurrencyLimit("download", 1, 1, 1, Duration.ofSeconds(5), Duration.ofSeconds(1), false, 2.0);
+    ConcurrencyLimit.Permit held = limit.acquire();
+
+    CompletableFuture<ConcurrencyLimit.Permit> waiting = CompletableFuture.supplyAsync(limit::acquire);
+    while (limit.queued() == 0) {
+      Thread.onSpinWait();
+    }
+    assertThatThrownBy(limit::acquire).isInstanceOf(OverloadedException.class);
+
+    held.release();
+    assertThat(waiting.get(5, TimeUnit.SECONDS)).isNotNull();
+    assertThat(limit.inFlight()).isEqualTo(1);
+  }
+
+  @Test
+  void shrinksWhenLatencyRisesAndRecovers() {
+    ConcurrencyLimit limit = new ConcurrencyLimit("metadata", 4, 32, 0, Duration.ZERO, Duration.ofSeconds(1), true, 2.0);
+    for (int i = 0; i < 200; i++) {
+      limit.observe(10, TimeUnit.MILLISECONDS);
+    }
+    assertThat(limit.limit()).isEqualTo(32);
+
+    for (int i = 0; i < 50; i++) {
+      limit.observe(200, TimeUnit.MILLISECONDS);
+    }
+    assertThat(limit.limit()).isLessThan(16).isGreaterThanOrEqualTo(4);
+
+    int shrunk = limit.limit();
+    for (int i = 0; i < shrunk; i++) {
+      limit.acquire();
+    }
+    for (int i = 0; i < 500; i++) {
+      limit.observe(10, TimeUnit.MILLISECONDS);
+    }
+    assertThat(limit.limit()).isGreaterThan(shrunk);
+  }
+}
@@ -0,0 +1,128 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+import io.minio.messages.Item;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ContentBlobsTests {
+
+  private static final String SHA256 = "a".repeat(64);
+
+  private final MinioClient client = mock(MinioClient.class);
+  private final ObjectIndex objectIndex = mock(ObjectIndex.class);
+  private ContentBlobs blobs;
+
+  @BeforeEach
+  void setUp() {
+    UploadProperties properties = new UploadProperties();
+    properties.getDedup().setEnabled(true);
+    MinioConfig minioConfig = new MinioConfig();
+    minioConfig.setBucketName("test-bucket");
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    blobs = new ContentBlobs(client, minioConfig, properties, objectIndex,
+        new StorageMetrics(registry, new Bulkheads(properties, registry)));
+  }
+
+  @Test
+  void sweepDeletesBlobOnlyWhenTwoSweepsFindItUnreferenced() throws Exception {
+    List<Result<Item>> bucket = List.of(
+        new Result<>(item(".blobs/orphan", Map.of())),
+        new Result<>(item(".blobs/used", Map.of())),
+        new Result<>(item("202601/a.pdf", Map.of("X-Amz-Meta-Content-Ref", ".blobs/used")))
+    );
+    when(client.listObjects(any(ListObjectsArgs.class))).thenReturn(bucket);
+
+    blobs.sweepOrphans();
+    verify(client, never()).removeObject(any());
+
+    blobs.sweepOrphans();
+    assertThat(removed()).containsExactly(".blobs/orphan");
+    verify(objectIndex).forgetBlob(".blobs/orphan");
+  }
+
+  @Test
+  void findIgnoresBlobPendingDeletion() throws Exception {
+    List<Result<Item>> bucket = List.of(new Result<>(item(".blobs/orphan", Map.of())));
+    when(client.listObjects(any(ListObjectsArgs.class))).thenReturn(bucket);
+    blobs.sweepOrphans();
+    when(objectIndex.findBlob(SHA256)).thenReturn(Optional.of(".blobs/orphan"));
+
+    assertThat(blobs.find(SHA256)).isEmpty();
+    verify(client, never()).statObject(any());
+  }
+
+  @Test
+  void referenceToVanishedBlobIsRemovedAgain() throws Exception {
+    when(client.putObject(any(PutObjectArgs.class))).thenReturn(mock(ObjectWriteResponse.class));
+    when(client.statObject(any(StatObjectArgs.class))).thenThrow(noSuchKey(".blobs/reused"));
+    ContentBlobs.Blob reused = new ContentBlobs.Blob(".blobs/reused", SHA256, 10, null, true);
+
+    assertThatThrownBy(() -> blobs.reference("202601/a.pdf", reused, "application/pdf"))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(removed()).containsExactly("202601/a.pdf");
+    verify(objectIndex).forgetBlob(".blobs/reused");
+  }
+
+  @Test
+  void storedRejectsContentNotMatchingClaimedHash() throws Exception {
+    assertThatThrownBy(() -> blobs.stored(".blobs/new", SHA256, 10, null, "b".repeat(64)))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(removed()).containsExactly(".blobs/new");
+  }
+
+  @Test
+  void storedDropsDuplicateOfExistingBlob() throws Exception {
+    StatObjectResponse stat = mock(StatObjectResponse.class);
+    when(stat.size()).thenReturn(10L);
+    when(client.statObject(any(StatObjectArgs.class))).thenReturn(stat);
+    when(objectIndex.findBlob(SHA256)).thenReturn(Optional.of(".blobs/existing"));
+
+    ContentBlobs.Blob blob = blobs.stored(".blobs/new", SHA256, 10, null, SHA256);
+
+    assertThat(blob.key()).isEqualTo(".blobs/existing");
+    assertThat(blob.reused()).isTrue();
+    assertThat(removed()).containsExactly(".blobs/new");
+  }
+
+  private List<String> removed() throws Exception {
+    ArgumentCaptor<RemoveObjectArgs> args = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+    verify(client, atLeast(0)).removeObject(args.capture());
+    return args.getAllValues().stream().map(RemoveObjectArgs::object).toList();
+  }
+
+  private static ErrorResponseException noSuchKey(String key) {
+    return new ErrorResponseException(
+        new ErrorResponse("NoSuchKey", "The specified key does not exist.", "test-bucket", key, null, null, null),
+        null, null);
+  }
+
+  private static Item item(String name, Map<String, String> userMetadata) {
+    Item item = mock(Item.class);
+    when(item.objectName()).thenReturn(name);
+    when(item.userMetadata()).thenReturn(userMetadata);
+    return item;
+  }
+}
@@ -0,0 +1,58 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DefaultObjectKeyPolicyTests {
+
+  private static final Clock JANUARY = Clock.fixed(Instant.parse("2026-01-15T10:00:00Z"), ZoneOffset.UTC);
+
+  private final ObjectKeyPolicy policy = new DefaultObjectKeyPolicy(new UploadProperties(), JANUARY);
+
+  @Test
+  void keepsLayoutOfFormerRegexChain() {
+    assertThat(policy.objectKey("report.pdf", null)).isEqualTo("202601/report.pdf");
+    assertThat(policy.objectKey("my  file @#(1).PDF", "/receipts/")).isEqualTo("receipts/202601/my_file_1.PDF");
+    assertThat(policy.objectKey("a _ @ _b", "")).isEqualTo("202601/a_b");
+    assertThat(policy.objectKey("..-_hidden.txt-_.", null)).isEqualTo("202601/hidden.txt");
+  }
+
+  @Test
+  void transliteratesAccentedLetters() {
+    assertThat(policy.objectKey("Biên lai thu phí Đà Nẵng.pdf", null))
+        .isEqualTo("202601/Bien_lai_thu_phi_Da_Nang.pdf");
+  }
+
+  @Test
+  void fallsBackToUnnamedFile() {
+    assertThat(policy.objectKey(null, null)).isEqualTo("202601/unnamed_file");
+    assertThat(policy.objectKey("...", null)).isEqualTo("202601/unnamed_file");
+    assertThat(policy.objectKey("发票", "docs")).isEqualTo("docs/202601/unnamed_file");
+  }
+
+  @Test
+  void shardsByNameWithinTheMonth() {
+    UploadProperties properties = new UploadProperties();
+    properties.getKeys().setShards(16);
+    ObjectKeyPolicy sharded = new DefaultObjectKeyPolicy(properties, JANUARY);
+
+    String key = sharded.objectKey("report.pdf", "receipts");
+
+    assertThat(key).matches("receipts/202601/0[0-9a-f]/report\\.pdf");
+    assertThat(sharded.objectKey("report.pdf", "receipts")).isEqualTo(key);
+  }
+
+  @Test
+  void omitsMonthWhenNotPartitioned() {
+    UploadProperties properties = new UploadProperties();
+    properties.getKeys().setDatePartitioned(false);
+
+    assertThat(new DefaultObjectKeyPolicy(properties, JANUARY).objectKey("a.txt", "x/")).isEqualTo("x/a.txt");
+  }
+}
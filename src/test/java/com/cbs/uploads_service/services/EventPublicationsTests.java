@@ -0,0 +1,131 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventPublicationsTests {
+
+  @TempDir
+  Path directory;
+
+  private final StaticApplicationContext context = new StaticApplicationContext();
+  private Recorder recorder;
+
+  @BeforeEach
+  void setUp() {
+    context.registerSingleton("recorder", Recorder.class);
+    context.refresh();
+    recorder = context.getBean(Recorder.class);
+  }
+
+  @AfterEach
+  void tearDown() {
+    context.close();
+  }
+
+  @Test
+  void deliversToMatchingListenersOnly() {
+    EventPublications publications = publications();
+
+    publications.publish(new FileUploaded("a.png", "image/png", 10, "etag"));
+    publications.publish("not an event anyone listens to");
+
+    assertThat(recorder.received).containsExactly("a.png");
+    assertThat(publications.incompleteCount()).isZero();
+  }
+
+  @Test
+  void failedPublicationIsDeliveredAgainAfterRestart() {
+    recorder.failing = true;
+    EventPublications first = publications();
+    first.publish(new FileUploaded("a.png", "image/png", 10, "etag"));
+    first.close();
+    EventPublications second = publications();
+    second.publish(new FileUploaded("b.png", "image/png", 10, "etag"));
+    second.close();
+    assertThat(recorder.received).isEmpty();
+
+    recorder.failing = false;
+    EventPublications restarted = publications();
+    assertThat(restarted.incompleteCount()).isEqualTo(2);
+
+    restarted.resubmitIncomplete();
+    restarted.close();
+    assertThat(recorder.received).containsExactlyInAnyOrder("a.png", "b.png");
+    assertThat(restarted.incompleteCount()).isZero();
+    assertThat(publications().incompleteCount()).isZero();
+  }
+
+  @Test
+  void writesPublicationBeforePublishReturnsAndAttemptsWhenFlushed() throws Exception {
+    Path log = directory.resolve(EventPublications.LOG_FILE);
+    recorder.failing = true;
+    EventPublications publications = publications();
+    publications.publish(new FileUploaded("a.png", "image/png", 10, "etag"));
+    assertThat(Files.readAllLines(log)).hasSize(1);
+
+    publications.flush();
+    assertThat(Files.readAllLines(log)).hasSize(2);
+  }
+
+  @Test
+  void dropsPublicationAfterMaxAttemptsWithBackoff() {
+    recorder.failing = true;
+    EventPublications publications = publications();
+    publications.publish(new FileUploaded("a.png", "image/png", 10, "etag"));
+    assertThat(recorder.attempts).hasValue(1);
+
+    publications.resubmitFailed();
+    assertThat(recorder.attempts).hasValue(2);
+
+    // The second failure waits two rounds
+    publications.resubmitFailed();
+    assertThat(recorder.attempts).hasValue(2);
+    publications.resubmitFailed();
+    assertThat(recorder.attempts).hasValue(3);
+
+    publications.flush();
+    assertThat(publications.incompleteCount()).isZero();
+    assertThat(publications().incompleteCount()).isZero();
+  }
+
+  private EventPublications publications() {
+    UploadProperties properties = new UploadProperties();
+    properties.getEvents().setDirectory(directory);
+    properties.getEvents().setMaxAttempts(3);
+    EventPublications publications = new EventPublications(
+        properties, context, new ObjectMapper(), Runnable::run, new SimpleMeterRegistry());
+    publications.afterSingletonsInstantiated();
+    return publications;
+  }
+
+  static class Recorder {
+
+    final List<String> received = new CopyOnWriteArrayList<>();
+    final AtomicInteger attempts = new AtomicInteger();
+    volatile boolean failing;
+
+    @DurableListener
+    public void uploaded(FileUploaded event) {
+      attempts.incrementAndGet();
+      if (failing) {
+        throw new IllegalStateException("not yet");
+      }
+      received.add(event.fileName());
+    }
+  }
+}
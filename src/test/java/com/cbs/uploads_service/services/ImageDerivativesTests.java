@@ -0,0 +1,82 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.StatObjectResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageDerivativesTests {
+
+  private static final String PATH = "202601/photo.png";
+
+  private MinioService minioService;
+  private ImageDerivatives derivatives;
+  private StatObjectResponse stat;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    minioService = mock(MinioService.class);
+    derivatives = new ImageDerivatives(minioService, new UploadProperties(), Runnable::run, new SimpleMeterRegistry());
+
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "png", png);
+    byte[] bytes = png.toByteArray();
+
+    stat = mock(StatObjectResponse.class);
+    when(stat.size()).thenReturn((long) bytes.length);
+    when(stat.etag()).thenReturn("abc");
+    when(stat.contentType()).thenReturn("image/png");
+    when(minioService.openObject(PATH)).thenAnswer(inv -> new ObjectContent(new ByteArrayInputStream(bytes), stat));
+  }
+
+  @Test
+  void fitsImageIntoBoxKeepingAspectRatio() throws Exception {
+    ImageDerivatives.Derivative derivative = derivatives.get(PATH, stat, derivatives.spec(200, 200, null, null));
+
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(derivative.body()));
+    assertThat(derivative.contentType()).isEqualTo(MediaType.IMAGE_JPEG);
+    assertThat(image.getWidth()).isEqualTo(200);
+    assertThat(image.getHeight()).isEqualTo(150);
+  }
+
+  @Test
+  void rendersEachVariantOnce() {
+    ImageDerivatives.Spec spec = derivatives.spec(100, null, "png", null);
+
+    derivatives.get(PATH, stat, spec);
+    derivatives.get(PATH, stat, spec);
+
+    verify(minioService, times(1)).openObject(PATH);
+  }
+
+  @Test
+  void forgetsVariantsOfDeletedImage() {
+    ImageDerivatives.Spec spec = derivatives.spec(100, null, "png", null);
+    derivatives.get(PATH, stat, spec);
+
+    derivatives.forget(new FileDeleted(PATH));
+    derivatives.get(PATH, stat, spec);
+
+    verify(minioService, times(2)).openObject(PATH);
+  }
+
+  @Test
+  void rejectsOversizedDimensions() {
+    assertThatThrownBy(() -> derivatives.spec(5000, null, null, null))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
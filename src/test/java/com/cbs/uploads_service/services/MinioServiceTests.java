@@ -0,0 +1,201 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.BulkDeleteRequest;
+import com.cbs.uploads_service.dto.DeleteResult;
+import com.cbs.uploads_service.response.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MinioServiceTests {
+
+  private final MinioClient client = mock(MinioClient.class);
+  private final ObjectIndex objectIndex = mock(ObjectIndex.class);
+  private final StatCache statCache = mock(StatCache.class);
+  private final ObjectDiskCache diskCache = mock(ObjectDiskCache.class);
+  private final ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+  private final ExecutorService executor = Executors.newFixedThreadPool(8);
+  private UploadProperties properties;
+
+  @BeforeEach
+  void setUp() {
+    properties = new UploadProperties();
+    properties.getResilience().setInitialBackoff(Duration.ofMillis(1));
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void uploadsBatchWithPerRequestLimitInRequestOrder() {
+    properties.getBatch().setMaxConcurrencyPerRequest(2);
+    MinioService service = spy(newService());
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    doAnswer(inv -> {
+      maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+      Thread.sleep(30);
+      active.decrementAndGet();
+      MultipartFile file = inv.getArgument(0);
+      return Response.builder().originalFileName(file.getOriginalFilename()).success(true).build();
+    }).when(service).uploadFile(any(MultipartFile.class), any());
+
+    List<Response> responses = service.uploadFiles(files("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt"), null);
+
+    assertThat(responses).extracting(Response::getOriginalFileName)
+        .containsExactly("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt");
+    assertThat(maxActive.get()).isEqualTo(2);
+  }
+
+  @Test
+  void reportsFailedFileInItsOwnEntry() {
+    MinioService service = spy(newService());
+    doAnswer(inv -> {
+      MultipartFile file = inv.getArgument(0);
+      if (file.getOriginalFilename().equals("b.txt")) {
+        throw new RuntimeException("Error uploading file: SlowDown");
+      }
+      return Response.builder().originalFileName(file.getOriginalFilename()).success(true).build();
+    }).when(service).uploadFile(any(MultipartFile.class), any());
+
+    List<Response> responses = service.uploadFiles(files("a.txt", "b.txt", "c.txt"), null);
+
+    assertThat(responses).extracting(Response::getOriginalFileName, Response::isSuccess)
+        .containsExactly(tuple("a.txt", true), tuple("b.txt", false), tuple("c.txt", true));
+    assertThat(responses.get(1).getMessage()).isEqualTo("Error uploading file: SlowDown");
+  }
+
+  @Test
+  void failsFilesThatFindUploadQueueFull() {
+    properties.getBatch().setMaxConcurrencyPerRequest(1);
+    MinioService service = newService(task -> {
+      throw new RejectedExecutionException("queue full");
+    });
+
+    List<Response> responses = service.uploadFiles(files("a.txt", "b.txt"), null);
+
+    assertThat(responses).extracting(Response::getOriginalFileName, Response::isSuccess)
+        .containsExactly(tuple("a.txt", false), tuple("b.txt", false));
+  }
+
+  @Test
+  void deletesInBatchesOf1000WithResultsInKeyOrder() {
+    properties.getBulkDelete().setConcurrency(3);
+    MinioService service = newService();
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    AtomicInteger calls = new AtomicInteger();
+    when(client.removeObjects(any(RemoveObjectsArgs.class))).thenAnswer(inv -> {
+      RemoveObjectsArgs args = inv.getArgument(0);
+      AtomicInteger size = new AtomicInteger();
+      args.objects().forEach(object -> size.incrementAndGet());
+      batchSizes.add(size.get());
+      // The first batch answers last
+      Thread.sleep(calls.incrementAndGet() == 1 ? 100 : 0);
+      return List.of();
+    });
+    List<String> keys = IntStream.range(0, 2_500).mapToObj(i -> String.format("202601/%05d.txt", i)).toList();
+    List<DeleteResult> results = new ArrayList<>();
+
+    service.deleteFiles(BulkDeleteRequest.builder().paths(keys).build(), results::addAll);
+
+    assertThat(batchSizes).containsExactlyInAnyOrder(1000, 1000, 500);
+    assertThat(results).extracting(DeleteResult::getFileName).containsExactlyElementsOf(keys);
+    assertThat(results).allMatch(DeleteResult::isDeleted);
+  }
+
+  @Test
+  void reportsDeleteErrorsAndInvalidatesOnlyDeletedKeys() throws Exception {
+    MinioService service = newService();
+    DeleteError denied = mock(DeleteError.class);
+    when(denied.objectName()).thenReturn("202601/b.txt");
+    when(denied.code()).thenReturn("AccessDenied");
+    when(denied.message()).thenReturn("Access Denied.");
+    List<Result<DeleteError>> errors = List.of(new Result<>(denied));
+    when(client.removeObjects(any(RemoveObjectsArgs.class))).thenReturn(errors);
+    List<DeleteResult> results = new ArrayList<>();
+
+    service.deleteFiles(BulkDeleteRequest.builder()
+        .paths(List.of("202601/a.txt", "202601/b.txt", "202601/c.txt"))
+        .build(), results::addAll);
+
+    assertThat(results).extracting(DeleteResult::getFileName, DeleteResult::isDeleted, DeleteResult::getError)
+        .containsExactly(
+            tuple("202601/a.txt", true, null),
+            tuple("202601/b.txt", false, "AccessDenied: Access Denied."),
+            tuple("202601/c.txt", true, null));
+    verify(statCache, never()).invalidate("202601/b.txt");
+    verify(objectIndex, never()).remove("202601/b.txt");
+    verify(diskCache).evictAll(List.of("202601/a.txt", "202601/c.txt"));
+    verify(events).publishEvent(new FileDeleted("202601/a.txt"));
+    verify(events).publishEvent(new FileDeleted("202601/c.txt"));
+    verify(events, never()).publishEvent(new FileDeleted("202601/b.txt"));
+  }
+
+  @Test
+  void dryRunDeletesNothing() {
+    MinioService service = newService();
+    List<DeleteResult> results = new ArrayList<>();
+
+    service.deleteFiles(BulkDeleteRequest.builder()
+        .paths(List.of("202601/a.txt", "202601/b.txt"))
+        .dryRun(true)
+        .build(), results::addAll);
+
+    assertThat(results).extracting(DeleteResult::getFileName, DeleteResult::isDryRun, DeleteResult::isDeleted)
+        .containsExactly(tuple("202601/a.txt", true, false), tuple("202601/b.txt", true, false));
+    verify(client, never()).removeObjects(any());
+    verifyNoInteractions(statCache, objectIndex, diskCache, events);
+  }
+
+  private static MultipartFile[] files(String... names) {
+    MultipartFile[] files = new MultipartFile[names.length];
+    for (int i = 0; i < names.length; i++) {
+      files[i] = new MockMultipartFile("files", names[i], "text/plain", names[i].getBytes());
+    }
+    return files;
+  }
+
+  private MinioService newService() {
+    return newService(executor);
+  }
+
+  private MinioService newService(Executor uploadExecutor) {
+    MinioConfig minioConfig = new MinioConfig();
+    minioConfig.setBucketName("test-bucket");
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    return new MinioService(client, mock(MinioAsyncClient.class), minioConfig, properties,
+        mock(PresignedUrlCache.class), objectIndex, statCache, diskCache,
+        new StorageMetrics(registry, new Bulkheads(properties, registry)), mock(ObjectKeyPolicy.class),
+        mock(ContentBlobs.class), mock(ObjectCompression.class), new StorageResilience(properties, registry),
+        events, uploadExecutor, executor);
+  }
+}
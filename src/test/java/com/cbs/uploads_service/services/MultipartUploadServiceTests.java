@@ -0,0 +1,127 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.UploadedPart;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.ListPartsResponse;
+import io.minio.ObjectWriteResponse;
+import io.minio.StatObjectResponse;
+import io.minio.messages.ListPartsResult;
+import io.minio.messages.Part;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MultipartUploadServiceTests {
+
+  private static final String PATH = "202601/video.mp4";
+  private static final String UPLOAD_ID = "upload-1";
+
+  private MultipartMinioClient client;
+  private MinioService minioService;
+  private MultipartUploadService service;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    client = mock(MultipartMinioClient.class);
+    minioService = mock(MinioService.class);
+    MinioConfig minioConfig = new MinioConfig();
+    minioConfig.setBucketName("test-bucket");
+    UploadProperties properties = new UploadProperties();
+    properties.getResilience().setInitialBackoff(Duration.ofMillis(1));
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    service = new MultipartUploadService(client, minioConfig, properties, minioService,
+        mock(ObjectIndex.class), mock(StatCache.class), mock(ApplicationEventPublisher.class),
+        new StorageMetrics(registry, new Bulkheads(properties, registry)), new StorageResilience(properties, registry));
+
+    StatObjectResponse stat = mock(StatObjectResponse.class);
+    when(stat.contentType()).thenReturn("video/mp4");
+    when(minioService.getFileInfo(PATH)).thenReturn(stat);
+    when(client.completeUpload(anyString(), anyString(), anyString(), any())).thenReturn(mock(ObjectWriteResponse.class));
+  }
+
+  @Test
+  void refusesGapInLandedPartsWithoutManifest() throws Exception {
+    landed(1, 2, 4, 5);
+
+    assertThatThrownBy(() -> service.complete(PATH, UPLOAD_ID, null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("Part 3");
+    verify(client, never()).completeUpload(anyString(), anyString(), anyString(), any());
+  }
+
+  @Test
+  void completesWithManifestPartsOnly() throws Exception {
+    landed(1, 2, 3);
+
+    service.complete(PATH, UPLOAD_ID, List.of(part(2, "\"etag-2\""), part(1, "etag-1")));
+
+    ArgumentCaptor<Part[]> parts = ArgumentCaptor.forClass(Part[].class);
+    verify(client).completeUpload(eq("test-bucket"), eq(PATH), eq(UPLOAD_ID), parts.capture());
+    assertThat(parts.getValue()).extracting(Part::partNumber).containsExactly(1, 2);
+  }
+
+  @Test
+  void refusesManifestPartThatDidNotLand() throws Exception {
+    landed(1, 2);
+
+    assertThatThrownBy(() -> service.complete(PATH, UPLOAD_ID, List.of(part(1, "etag-1"), part(3, "etag-3"))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("Part 3");
+    assertThatThrownBy(() -> service.complete(PATH, UPLOAD_ID, List.of(part(1, "other"))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("etag");
+  }
+
+  @Test
+  void retriesListingButNotPartBodies() throws Exception {
+    landed(1);
+    ListPartsResponse listed = client.listParts("test-bucket", PATH, UPLOAD_ID, 1000, 0);
+    when(client.listParts(anyString(), anyString(), anyString(), anyInt(), anyInt()))
+        .thenThrow(new IOException("connection reset"))
+        .thenReturn(listed);
+    assertThat(service.listParts(PATH, UPLOAD_ID)).hasSize(1);
+
+    when(client.uploadPart(anyString(), anyString(), anyString(), anyInt(), any(), anyLong()))
+        .thenThrow(new IOException("connection reset"));
+    assertThatThrownBy(() -> service.uploadPart(PATH, UPLOAD_ID, 2, InputStream.nullInputStream(), 10))
+        .isInstanceOf(RuntimeException.class);
+    verify(client, times(1)).uploadPart(anyString(), anyString(), anyString(), anyInt(), any(), anyLong());
+  }
+
+  private void landed(int... numbers) throws Exception {
+    List<Part> parts = new ArrayList<>();
+    for (int number : numbers) {
+      Part part = mock(Part.class);
+      when(part.partNumber()).thenReturn(number);
+      when(part.etag()).thenReturn("etag-" + number);
+      parts.add(part);
+    }
+    ListPartsResult result = mock(ListPartsResult.class);
+    when(result.partList()).thenReturn(parts);
+    ListPartsResponse response = mock(ListPartsResponse.class);
+    when(response.result()).thenReturn(result);
+    when(client.listParts(anyString(), anyString(), anyString(), anyInt(), anyInt())).thenReturn(response);
+  }
+
+  private static UploadedPart part(int number, String etag) {
+    return UploadedPart.builder().partNumber(number).etag(etag).build();
+  }
+}
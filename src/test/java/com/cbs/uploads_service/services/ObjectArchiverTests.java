@@ -0,0 +1,94 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import io.minio.StatObjectResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ObjectArchiverTests {
+
+  private MinioService minioService;
+  private ObjectArchiver archiver;
+
+  @BeforeEach
+  void setUp() {
+    UploadProperties properties = new UploadProperties();
+    // Smaller than the text object, so it is streamed past the read-ahead
+    properties.getArchive().setPrefetchSize(DataSize.ofBytes(4));
+    minioService = mock(MinioService.class);
+    archiver = new ObjectArchiver(minioService, properties, Runnable::run);
+  }
+
+  @Test
+  void writesEntriesRelativeToPrefix() throws Exception {
+    stub("202601/a/report.txt", "text/plain", "quarterly report");
+    stub("202601/b/photo.jpg", "image/jpeg", "jpg");
+
+    Map<String, String> entries = unzip(List.of("202601/a/report.txt", "202601/b/photo.jpg"), "202601/");
+
+    assertThat(entries).containsExactly(
+        Map.entry("a/report.txt", "quarterly report"),
+        Map.entry("b/photo.jpg", "jpg"));
+  }
+
+  @Test
+  void listsUnreadableObjectsInErrorsEntry() throws Exception {
+    stub("202601/ok.txt", "text/plain", "ok");
+    when(minioService.openObject("202601/gone.txt")).thenThrow(new RuntimeException("Error downloading file: NoSuchKey"));
+
+    Map<String, String> entries = unzip(List.of("202601/gone.txt", "202601/ok.txt"), null);
+
+    assertThat(entries).containsKeys("202601/ok.txt", ObjectArchiver.ERRORS_ENTRY);
+    assertThat(entries.get(ObjectArchiver.ERRORS_ENTRY)).startsWith("202601/gone.txt: ");
+  }
+
+  @Test
+  void skipsDuplicateEntryNamesWithoutBreakingTheArchive() throws Exception {
+    stub("202601/ERRORS.txt", "text/plain", "real file");
+    stub("202601/a.txt", "text/plain", "a");
+    when(minioService.openObject("202601/gone.txt")).thenThrow(new RuntimeException("Error downloading file: NoSuchKey"));
+
+    Map<String, String> entries = unzip(
+        List.of("202601/ERRORS.txt", "202601/a.txt", "202601/a.txt", "202601/gone.txt"), "202601/");
+
+    assertThat(entries).containsEntry("ERRORS.txt", "real file").containsEntry("a.txt", "a");
+    assertThat(entries.get("ERRORS-1.txt"))
+        .contains("202601/a.txt: duplicate entry a.txt")
+        .contains("202601/gone.txt: ");
+  }
+
+  private void stub(String key, String contentType, String body) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    StatObjectResponse stat = mock(StatObjectResponse.class);
+    when(stat.size()).thenReturn((long) bytes.length);
+    when(stat.contentType()).thenReturn(contentType);
+    when(minioService.openObject(key)).thenAnswer(inv -> new ObjectContent(new ByteArrayInputStream(bytes), stat));
+  }
+
+  private Map<String, String> unzip(List<String> keys, String prefix) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    archiver.write(keys.iterator(), prefix, out);
+
+    Map<String, String> entries = new LinkedHashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+    return entries;
+  }
+}
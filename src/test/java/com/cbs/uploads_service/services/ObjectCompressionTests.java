@@ -0,0 +1,32 @@
+package com.cbs.uploads_service.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ObjectCompressionTests {
+
+  @Test
+  void acceptsListedOrWildcardCodec() {
+    assertThat(ObjectCompression.accepts(List.of("gzip, deflate, br"), "gzip")).isTrue();
+    assertThat(ObjectCompression.accepts(List.of("x-gzip"), "gzip")).isTrue();
+    assertThat(ObjectCompression.accepts(List.of("br", "*;q=0.1"), "zstd")).isTrue();
+    assertThat(ObjectCompression.accepts(List.of("br"), "zstd")).isFalse();
+    assertThat(ObjectCompression.accepts(List.of(), "gzip")).isFalse();
+  }
+
+  @Test
+  void refusesExcludedCodec() {
+    assertThat(ObjectCompression.accepts(List.of("gzip;q=0"), "gzip")).isFalse();
+    assertThat(ObjectCompression.accepts(List.of("gzip;q=0, *"), "gzip")).isFalse();
+    assertThat(ObjectCompression.accepts(List.of("*;q=0"), "zstd")).isFalse();
+    assertThat(ObjectCompression.accepts(List.of("zstd;q=0.5, *;q=0"), "zstd")).isTrue();
+  }
+
+  @Test
+  void treatsMalformedQualityAsExclusion() {
+    assertThat(ObjectCompression.accepts(List.of("gzip;q=high"), "gzip")).isFalse();
+  }
+}
@@ -0,0 +1,145 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.StatObjectResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ObjectDiskCacheTests {
+
+  private static final String PATH = "202601/report.pdf";
+  private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+  @TempDir
+  Path tempDir;
+
+  private ObjectDiskCache cache;
+  private StatObjectResponse stat;
+
+  @BeforeEach
+  void setUp() {
+    cache = newCache(tempDir.resolve("cache"));
+    cache.initialize();
+
+    stat = mock(StatObjectResponse.class);
+    when(stat.size()).thenReturn((long) CONTENT.length);
+    when(stat.etag()).thenReturn("abc");
+  }
+
+  @Test
+  void servesRangeAfterFullRead() throws Exception {
+    try (InputStream in = cache.fill(PATH, stat, new ByteArrayInputStream(CONTENT))) {
+      in.readAllBytes();
+    }
+
+    Optional<ObjectContent> hit = cache.open(PATH, stat, 2, 4L);
+
+    assertThat(hit).isPresent();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectContent content = hit.get()) {
+      content.transferTo(out);
+    }
+    assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo("2345");
+  }
+
+  @Test
+  void discardsIncompleteFill() throws Exception {
+    try (InputStream in = cache.fill(PATH, stat, new ByteArrayInputStream(CONTENT))) {
+      in.readNBytes(3);
+    }
+
+    assertThat(cache.open(PATH, stat, 0, null)).isEmpty();
+  }
+
+  @Test
+  void missesOtherVersionOfObject() throws Exception {
+    try (InputStream in = cache.fill(PATH, stat, new ByteArrayInputStream(CONTENT))) {
+      in.readAllBytes();
+    }
+
+    StatObjectResponse rewritten = mock(StatObjectResponse.class);
+    when(rewritten.size()).thenReturn((long) CONTENT.length);
+    when(rewritten.etag()).thenReturn("def");
+
+    assertThat(cache.open(PATH, rewritten, 0, null)).isEmpty();
+    assertThat(cache.contains(PATH)).isFalse();
+  }
+
+  @Test
+  void refillSurvivesDeletionOfEvictedBody() throws Exception {
+    Path directory = tempDir.resolve("cache");
+    try (InputStream in = cache.fill(PATH, stat, new ByteArrayInputStream(CONTENT))) {
+      in.readAllBytes();
+    }
+    Path evicted = bodies(directory).get(0);
+
+    cache.evict(PATH);
+    try (InputStream in = cache.fill(PATH, stat, new ByteArrayInputStream(CONTENT))) {
+      in.readAllBytes();
+    }
+    // Caffeine runs the removal listener of the evicted entry on the common pool
+    ForkJoinPool.commonPool().awaitQuiescence(5, TimeUnit.SECONDS);
+
+    assertThat(bodies(directory)).hasSize(1).doesNotContain(evicted);
+    Optional<ObjectContent> hit = cache.open(PATH, stat, 0, null);
+    assertThat(hit).isPresent();
+    hit.get().close();
+  }
+
+  @Test
+  void dropsOnlyItsOwnFilesAtStartup() throws Exception {
+    try (InputStream in = cache.fill(PATH, stat, new ByteArrayInputStream(CONTENT))) {
+      in.readAllBytes();
+    }
+    Path directory = tempDir.resolve("cache");
+    assertThat(directory.resolve(ObjectDiskCache.MARKER)).exists();
+
+    newCache(directory).initialize();
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.map(file -> file.getFileName().toString())).containsExactly(ObjectDiskCache.MARKER);
+    }
+  }
+
+  @Test
+  void refusesDirectoryWithForeignContent() throws Exception {
+    Path shared = Files.createDirectories(tempDir.resolve("shared"));
+    Files.createDirectories(shared.resolve("events"));
+    Files.writeString(shared.resolve("object-index.snapshot"), "index");
+
+    assertThatThrownBy(() -> newCache(shared).initialize()).isInstanceOf(IllegalStateException.class);
+    assertThat(shared.resolve("events")).exists();
+    assertThat(shared.resolve("object-index.snapshot")).exists();
+  }
+
+  private static List<Path> bodies(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.getFileName().toString().endsWith(".body")).toList();
+    }
+  }
+
+  private static ObjectDiskCache newCache(Path directory) {
+    UploadProperties properties = new UploadProperties();
+    properties.getDiskCache().setDirectory(directory);
+    return new ObjectDiskCache(properties, new SimpleMeterRegistry());
+  }
+}
@@ -0,0 +1,157 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.MinioConfig;
+import com.cbs.uploads_service.config.UploadProperties;
+import com.cbs.uploads_service.dto.FileSearchCriteria;
+import com.cbs.uploads_service.dto.IndexedObject;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ObjectIndexTests {
+
+  @TempDir
+  Path tempDir;
+
+  private final MinioClient client = mock(MinioClient.class);
+  private UploadProperties properties;
+  private ObjectIndex index;
+
+  @BeforeEach
+  void setUp() {
+    properties = new UploadProperties();
+    properties.getIndex().setSnapshotFile(tempDir.resolve("index.snapshot"));
+    index = newIndex();
+
+    index.put(object("202601/a.pdf", 100, "application/pdf", "2026-01-05T10:00:00Z"));
+    index.put(object("202601/b.png", 2_000, "image/png", "2026-01-20T10:00:00Z"));
+    index.put(object("202602/c.jpg", 30_000, "image/jpeg", "2026-02-02T10:00:00Z"));
+    index.put(object("docs/202602/d.txt", 10, "text/plain", "2026-02-03T10:00:00Z"));
+  }
+
+  @Test
+  void listsByPrefixInKeyOrder() {
+    List<String> names = index.list("202601/", null).map(IndexedObject::getFileName).toList();
+
+    assertThat(names).containsExactly("202601/a.pdf", "202601/b.png");
+  }
+
+  @Test
+  void listsAfterContinuationKey() {
+    List<String> names = index.list(null, "202601/b.png").map(IndexedObject::getFileName).toList();
+
+    assertThat(names).containsExactly("202602/c.jpg", "docs/202602/d.txt");
+  }
+
+  @Test
+  void searchesByContentTypeWildcardAndSize() {
+    List<IndexedObject> found = index.search(FileSearchCriteria.builder()
+        .contentType("image/*")
+        .minSize(5_000L)
+        .limit(10)
+        .build());
+
+    assertThat(found).extracting(IndexedObject::getFileName).containsExactly("202602/c.jpg");
+  }
+
+  @Test
+  void searchesByModificationRange() {
+    List<IndexedObject> found = index.search(FileSearchCriteria.builder()
+        .modifiedAfter(ZonedDateTime.parse("2026-01-10T00:00:00Z"))
+        .modifiedBefore(ZonedDateTime.parse("2026-02-03T00:00:00Z"))
+        .limit(10)
+        .build());
+
+    assertThat(found).extracting(IndexedObject::getFileName).containsExactly("202601/b.png", "202602/c.jpg");
+  }
+
+  @Test
+  void rescanReconcilesWithBucketAndSnapshotRestoresIt() {
+    List<Result<Item>> bucket = List.of(
+        new Result<>(item("202601/b.png", 2_000, "image/png")),
+        new Result<>(item("202603/e.csv", 50, "text/csv"))
+    );
+    when(client.listObjects(any(ListObjectsArgs.class))).thenReturn(bucket);
+
+    index.rescan();
+
+    assertThat(index.list(null, null).map(IndexedObject::getFileName))
+        .containsExactly("202601/b.png", "202603/e.csv");
+
+    ObjectIndex restored = newIndex();
+    restored.loadSnapshot();
+
+    assertThat(restored.isReady()).isTrue();
+    assertThat(restored.get("202603/e.csv")).get()
+        .extracting(IndexedObject::getContentType, IndexedObject::getSize)
+        .containsExactly("text/csv", 50L);
+  }
+
+  @Test
+  void indexesReferencesByContentAndHidesBlobs() {
+    String sha256 = "a".repeat(64);
+    Item reference = item("202603/statement.pdf", 0, "application/pdf");
+    when(reference.userMetadata()).thenReturn(Map.of(
+        "content-type", "application/pdf",
+        "X-Amz-Meta-Content-Sha256", sha256,
+        "X-Amz-Meta-Content-Ref", ".blobs/1234",
+        "X-Amz-Meta-Content-Size", "4096"));
+    List<Result<Item>> bucket = List.of(
+        new Result<>(item(".blobs/1234", 4_096, "application/pdf")),
+        new Result<>(reference)
+    );
+    when(client.listObjects(any(ListObjectsArgs.class))).thenReturn(bucket);
+
+    index.rescan();
+
+    assertThat(index.list(null, null).map(IndexedObject::getFileName)).containsExactly("202603/statement.pdf");
+    assertThat(index.get("202603/statement.pdf")).get()
+        .extracting(IndexedObject::getSize, IndexedObject::getEtag, IndexedObject::getContentKey)
+        .containsExactly(4_096L, sha256, ".blobs/1234");
+
+    ObjectIndex restored = newIndex();
+    restored.loadSnapshot();
+
+    assertThat(restored.findBlob(sha256)).contains(".blobs/1234");
+  }
+
+  private ObjectIndex newIndex() {
+    MinioConfig minioConfig = new MinioConfig();
+    minioConfig.setBucketName("test-bucket");
+    return new ObjectIndex(client, minioConfig, properties);
+  }
+
+  private static Item item(String name, long size, String contentType) {
+    Item item = mock(Item.class);
+    when(item.objectName()).thenReturn(name);
+    when(item.size()).thenReturn(size);
+    when(item.lastModified()).thenReturn(ZonedDateTime.parse("2026-03-01T10:00:00Z"));
+    when(item.etag()).thenReturn("\"etag\"");
+    when(item.userMetadata()).thenReturn(Map.of("content-type", contentType));
+    return item;
+  }
+
+  private static IndexedObject object(String name, long size, String contentType, String lastModified) {
+    return IndexedObject.builder()
+        .fileName(name)
+        .size(size)
+        .contentType(contentType)
+        .lastModified(ZonedDateTime.parse(lastModified))
+        .etag("etag-" + name)
+        .build();
+  }
+}
@@ -0,0 +1,123 @@
+package com.cbs.uploads_service.services;
+
+import com.cbs.uploads_service.config.UploadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StorageResilienceTests {
+
+  @Test
+  void retriesTransientFailuresOnly() throws Exception {
+    StorageResilience resilience = new StorageResilience(properties(), new SimpleMeterRegistry());
+    AtomicInteger attempts = new AtomicInteger();
+
+    String value = resilience.call("stat", () -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new IOException("connection reset");
+      }
+      return "ok";
+    });
+    assertThat(value).isEqualTo("ok");
+    assertThat(attempts).hasValue(3);
+
+    attempts.set(0);
+    assertThatThrownBy(() -> resilience.call("stat", () -> {
+      attempts.incrementAndGet();
+      throw new IllegalStateException("bad request");
+    })).isInstanceOf(IllegalStateException.class);
+    assertThat(attempts).hasValue(1);
+
+    attempts.set(0);
+    assertThat(resilience.callAsync("stat", () -> attempts.incrementAndGet() < 2
+        ? CompletableFuture.failedFuture(new IOException("timeout"))
+        : CompletableFuture.completedFuture("ok")).join()).isEqualTo("ok");
+    assertThat(attempts).hasValue(2);
+  }
+
+  @Test
+  void openBreakerFailsFastUntilTrialSucceeds() throws Exception {
+    UploadProperties properties = properties();
+    properties.getResilience().setMaxAttempts(1);
+    properties.getResilience().getBreaker().setMinimumCalls(4);
+    properties.getResilience().getBreaker().setOpenDuration(Duration.ofMillis(100));
+    StorageResilience resilience = new StorageResilience(properties, new SimpleMeterRegistry());
+
+    for (int i = 0; i < 4; i++) {
+      assertThatThrownBy(() -> resilience.call("stat", () -> {
+        throw new IOException("connection refused");
+      })).isInstanceOf(IOException.class);
+    }
+    assertThat(resilience.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThatThrownBy(() -> resilience.call("stat", () -> "ok"))
+        .isInstanceOf(StorageUnavailableException.class)
+        .satisfies(e -> assertThat(((StorageUnavailableException) e).getRetryAfter()).isPositive());
+
+    Thread.sleep(150);
+    assertThat(resilience.call("stat", () -> "ok")).isEqualTo("ok");
+    assertThat(resilience.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void abortedUploadBodyDoesNotMoveBreaker() throws Exception {
+    UploadProperties properties = properties();
+    properties.getResilience().getBreaker().setMinimumCalls(4);
+    StorageResilience resilience = new StorageResilience(properties, new SimpleMeterRegistry());
+    InputStream aborted = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("Connection reset by peer");
+      }
+    };
+
+    for (int i = 0; i < 8; i++) {
+      assertThatThrownBy(() -> resilience.once(() -> RequestBodyException.guard(aborted).read()))
+          .isInstanceOf(RequestBodyException.class);
+    }
+    assertThat(resilience.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(StorageResilience.isTransient(new RuntimeException(new RequestBodyException(new IOException())))).isFalse();
+  }
+
+  @Test
+  void slowCallIsHedgedAndLoserDiscarded() {
+    UploadProperties properties = properties();
+    properties.getResilience().getHedging().setMinSamples(5);
+    properties.getResilience().getHedging().setMinDelay(Duration.ofMillis(1));
+    properties.getResilience().getHedging().setBudget(1.0);
+    StorageResilience resilience = new StorageResilience(properties, new SimpleMeterRegistry());
+
+    for (int i = 0; i < 5; i++) {
+      resilience.hedged("download", () -> CompletableFuture.completedFuture("fast"), null).join();
+    }
+
+    CompletableFuture<String> stuck = new CompletableFuture<>();
+    AtomicInteger calls = new AtomicInteger();
+    List<String> discarded = new CopyOnWriteArrayList<>();
+    String value = resilience.hedged("download",
+        () -> calls.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("hedge"),
+        discarded::add).join();
+
+    assertThat(value).isEqualTo("hedge");
+    assertThat(calls).hasValue(2);
+
+    stuck.complete("primary");
+    assertThat(discarded).containsExactly("primary");
+  }
+
+  private static UploadProperties properties() {
+    UploadProperties properties = new UploadProperties();
+    properties.getResilience().setInitialBackoff(Duration.ofMillis(1));
+    properties.getResilience().setMaxBackoff(Duration.ofMillis(5));
+    return properties;
+  }
+}
@@ -0,0 +1,29 @@
+package com.cbs.uploads_service.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadTooLargeExceptionTests {
+
+  @Test
+  void readsBodyUpToLimit() throws Exception {
+    InputStream in = UploadTooLargeException.limit(new ByteArrayInputStream(new byte[10]), 10);
+
+    assertThat(in.readAllBytes()).hasSize(10);
+  }
+
+  @Test
+  void failsBodyOverLimit() throws Exception {
+    InputStream in = RequestBodyException.guard(
+        UploadTooLargeException.limit(new ByteArrayInputStream(new byte[11]), 10));
+
+    assertThatThrownBy(in::readAllBytes)
+        .isInstanceOf(RequestBodyException.class)
+        .satisfies(e -> assertThat(UploadTooLargeException.find(e).getMaxSize()).isEqualTo(10));
+  }
+}
@@ -0,0 +1,59 @@
+package com.cbs.uploads_service.utils;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressingInputStreamTests {
+
+  private static final byte[] CONTENT = "uploads-service ".repeat(20_000).getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  void gzipRoundTrip() throws Exception {
+    byte[] compressed = new CompressingInputStream(new ByteArrayInputStream(CONTENT), GZIPOutputStream::new)
+        .readAllBytes();
+
+    assertThat(compressed.length).isLessThan(CONTENT.length / 10);
+    assertThat(new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  void zstdRoundTripReadByteByByte() throws Exception {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (InputStream in = new CompressingInputStream(new ByteArrayInputStream(CONTENT), ZstdOutputStream::new)) {
+      for (int b = in.read(); b != -1; b = in.read()) {
+        compressed.write(b);
+      }
+    }
+
+    assertThat(new ZstdInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes())
+        .isEqualTo(CONTENT);
+  }
+
+  @Test
+  void zeroLengthReadReturnsZero() throws IOException {
+    try (InputStream in = new CompressingInputStream(new ByteArrayInputStream(CONTENT), GZIPOutputStream::new)) {
+      assertThat(in.read(new byte[8], 0, 0)).isZero();
+      assertThat(in.read(new byte[8], 0, 8)).isPositive();
+    }
+  }
+
+  @Test
+  void emptySourceCompressesToValidEmptyStream() throws Exception {
+    byte[] gzip = new CompressingInputStream(InputStream.nullInputStream(), GZIPOutputStream::new).readAllBytes();
+    byte[] zstd = new CompressingInputStream(InputStream.nullInputStream(), ZstdOutputStream::new).readAllBytes();
+
+    assertThat(new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes()).isEmpty();
+    assertThat(new ZstdInputStream(new ByteArrayInputStream(zstd)).readAllBytes()).isEmpty();
+  }
+}